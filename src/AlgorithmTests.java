@@ -1,6 +1,8 @@
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import net.jroush.profiling.SizeOf;
 
 public class AlgorithmTests {
@@ -11,6 +13,26 @@ public class AlgorithmTests {
 
     protected Path                              outputDir;
 
+    /** Pool for evaluating clusterings, or {@code null} to run sequentially */
+    protected ForkJoinPool                      pool  = ForkJoinPool
+                                                              .commonPool();
+
+    /**
+     * Largest tuple count evaluated with the full O(n^2) silhouette. Larger
+     * clusterings use the simplified one ({@link Silhouette#simplified}), or
+     * in quality tests a sampled one ({@link Silhouette#sampled}).
+     */
+    protected int                               fullSilhouetteMax = 20000;
+
+    /**
+     * Whether data tests also write each data set as a {@link DataSetFile}
+     * ({@code .dataset.bin}), and cluster the copy read back from it.
+     */
+    protected boolean                           binaryRoundTrip = false;
+
+    /** Columns of the perf tables, see {@link #tuplePerf} */
+    private static final int                    PERF_COLS = 5;
+
     public AlgorithmTests(String outputDir) throws IOException {
         this.outputDir = Paths.get(outputDir);
         Files.createDirectories(this.outputDir);
@@ -19,12 +41,47 @@ public class AlgorithmTests {
     @FunctionalInterface public static interface ClusteringAlgo {
 
         Clustering apply(DataSet data, Random rng, int clCnt);
+
+        /**
+         * Return an algorithm for clustering only the given data set, with any
+         * conversion of the data already done. Perf tests call this before
+         * starting the clock.
+         */
+        default ClusteringAlgo prepare(DataSet data) {
+            return this;
+        }
+    }
+
+    /** An algorithm on a converted copy of the data, e.g. a FloatDataSet */
+    @FunctionalInterface public static interface ConvertedAlgo<T> {
+
+        Clustering apply(T data, Random rng, int clCnt);
     }
 
     public void addAlgorithm(String name, ClusteringAlgo algo) {
         algos.put(name, algo);
     }
 
+    /**
+     * Add an algorithm that works on a conversion of the data set. The
+     * conversion is not included in the runtimes of the perf tests.
+     */
+    public <T> void addAlgorithm(String name, Function<DataSet, T> convert,
+            ConvertedAlgo<T> algo) {
+        algos.put(name, new ClusteringAlgo() {
+
+            @Override public Clustering apply(DataSet data, Random rng,
+                    int clCnt) {
+                return algo.apply(convert.apply(data), rng, clCnt);
+            }
+
+            @Override public ClusteringAlgo prepare(DataSet data) {
+                final T conv = convert.apply(data);
+                return (d, rng, clCnt) -> algo.apply(conv, rng, clCnt);
+            }
+        });
+    }
+
     public DataGenerator.GeneratedData genData(int attrCnt, int tupCnt,
             int clCnt, double clRad) {
         DataGenerator g = new DataGenerator(rand, attrCnt);
@@ -60,6 +117,8 @@ public class AlgorithmTests {
         // description and header
         File file = outputDir.resolve(name + ".tupleperf").toFile();
         PrintStream p = new PrintStream(file);
+        double[] table = new double[PERF_COLS * 64];
+        int rows = 0;
         p.println("#\tPerformance Testing\t" + name);
         p.println("Tuple Count\tRepeats\tTime(ns)\tTime Per Rep(ns)\tMem(bytes)");
 
@@ -73,11 +132,12 @@ public class AlgorithmTests {
 
             // repeatedly cluster the data to get an average runtime
             Clustering cl = null;
+            ClusteringAlgo run = algo.prepare(dataSlice);
             long begin = System.nanoTime();
             long end = begin + (long) (maxtime * 1e9 + 0.5);
             int rep = 0;
             for (; rep < maxrep && System.nanoTime() < end; rep++) {
-                cl = algo.apply(dataSlice, rand, clCnt);
+                cl = run.apply(dataSlice, rand, clCnt);
             }
             long dur = System.nanoTime() - begin;
             p.print(rep);
@@ -88,12 +148,17 @@ public class AlgorithmTests {
             p.print('\t');
 
             // measure memory usage
-            p.print(sizeof.deepSize(cl));
+            long mem = sizeof.deepSize(cl);
+            p.print(mem);
 
             p.println();
+            table = addRow(table, rows++, tupcnt, rep, dur,
+                    dur / (double) rep, mem);
             if (rep == 1) break;
         }
         p.close();
+        Npy.write(outputDir.resolve(name + ".tupleperf.npy"), table, rows,
+                PERF_COLS);
     }
 
     public void attrPerf(String name, ClusteringAlgo algo, int maxAttr,
@@ -105,6 +170,8 @@ public class AlgorithmTests {
         // description and header
         File file = outputDir.resolve(name + ".attrperf").toFile();
         PrintStream p = new PrintStream(file);
+        double[] table = new double[PERF_COLS * 64];
+        int rows = 0;
         p.println("#\tPerformance Testing\t" + name);
         p.println("Attribute Count\tRepeats\tTime(ns)\tTime Per Rep(ns)\tMem(bytes)");
 
@@ -123,11 +190,12 @@ public class AlgorithmTests {
 
             // repeatedly cluster the data to get an average runtime
             Clustering cl = null;
+            ClusteringAlgo run = algo.prepare(g.data);
             long begin = System.nanoTime();
             long end = begin + (long) (maxtime * 1e9 + 0.5);
             int rep = 0;
             for (; rep < maxrep && System.nanoTime() < end; rep++) {
-                cl = algo.apply(g.data, rand, clCnt);
+                cl = run.apply(g.data, rand, clCnt);
             }
             long dur = System.nanoTime() - begin;
             p.print(rep);
@@ -138,12 +206,17 @@ public class AlgorithmTests {
             p.print('\t');
 
             // measure memory usage
-            p.print(sizeof.deepSize(cl));
+            long mem = sizeof.deepSize(cl);
+            p.print(mem);
 
             p.println();
+            table = addRow(table, rows++, attrcnt, rep, dur,
+                    dur / (double) rep, mem);
             if (rep == 1) break;
         }
         p.close();
+        Npy.write(outputDir.resolve(name + ".attrperf.npy"), table, rows,
+                PERF_COLS);
     }
 
     public void clusPerf(String name, ClusteringAlgo algo, int attrCnt,
@@ -153,6 +226,8 @@ public class AlgorithmTests {
         // description and header
         File file = outputDir.resolve(name + ".clusperf").toFile();
         PrintStream p = new PrintStream(file);
+        double[] table = new double[PERF_COLS * 64];
+        int rows = 0;
         p.println("#\tPerformance Testing\t" + name);
         p.println("Cluster Count\tRepeats\tTime(ns)\tTime Per Rep(ns)\tMem(bytes)");
 
@@ -172,11 +247,12 @@ public class AlgorithmTests {
 
             // repeatedly cluster the data to get an average runtime
             Clustering cl = null;
+            ClusteringAlgo run = algo.prepare(g.data);
             long begin = System.nanoTime();
             long end = begin + (long) (maxtime * 1e9 + 0.5);
             int rep = 0;
             for (; rep < maxrep && System.nanoTime() < end; rep++) {
-                cl = algo.apply(g.data, rand, cluscnt);
+                cl = run.apply(g.data, rand, cluscnt);
             }
             long dur = System.nanoTime() - begin;
             p.print(rep);
@@ -187,24 +263,59 @@ public class AlgorithmTests {
             p.print('\t');
 
             // measure memory usage
-            p.print(sizeof.deepSize(cl));
+            long mem = sizeof.deepSize(cl);
+            p.print(mem);
 
             p.println();
+            table = addRow(table, rows++, cluscnt, rep, dur,
+                    dur / (double) rep, mem);
             if (rep == 1) break;
         }
         p.close();
+        Npy.write(outputDir.resolve(name + ".clusperf.npy"), table, rows,
+                PERF_COLS);
     }
 
-    public void qualityTests() throws IOException {
+    /**
+     * Store a row of a perf table, growing the table if needed.
+     *
+     * @return The table, or a larger copy of it
+     */
+    private static double[] addRow(double[] table, int row, double... values) {
+        if (table.length < (row + 1) * values.length) {
+            table = Arrays.copyOf(table, 2 * table.length);
+        }
+        System.arraycopy(values, 0, table, row * values.length, values.length);
+        return table;
+    }
+
+    /** Evaluate a clustering, with a silhouette suited to its size */
+    protected Silhouette silhouette(DataSet data, Clustering cl) {
+        if (Math.min(data.tupleCnt, cl.tupleCount()) <= fullSilhouetteMax) {
+            return new Silhouette(data, cl, pool);
+        }
+        return Silhouette.simplified(data, cl, pool);
+    }
+
+    /**
+     * Run the quality sweep of every algorithm, up to 100k tuples. Data sets
+     * larger than {@link #fullSilhouetteMax} are evaluated with the sampled
+     * silhouette.
+     *
+     * @param maxtime The runtime (in s) of a single clustering after which
+     *            the sweep stops growing the tuple count, so the slow
+     *            algorithms do not run for hours
+     */
+    public void qualityTests(double maxtime) throws IOException {
         for (Map.Entry<String, ClusteringAlgo> t : algos.entrySet()) {
             String name = t.getKey();
             ClusteringAlgo algo = t.getValue();
-            quality(name, algo, 8, 2000, 20);
+            quality(name, algo, 8, 100000, 20, maxtime);
         }
     }
 
     public void quality(String name, ClusteringAlgo algo, int maxattr,
-            int maxtup, int maxclus) throws IOException {
+            int maxtup, int maxclus, double maxtime) throws IOException {
 
         // description and header
         File file = outputDir.resolve(name + ".quality").toFile();
@@ -213,7 +324,8 @@ public class AlgorithmTests {
         p.print("Attribute Count\tTuple Count\tCluster Count\t");
         p.print("Found Clusters\t");
         p.print("B3 Precision\tB3 Recall\t");
-        p.println("Noise\tCompactness\tSeparation\tSilhouette");
+        p.print("Noise\tCompactness\tSeparation\tSilhouette\t");
+        p.println("Silhouette Error\tARI\tNMI\tPurity");
 
         for (int attrcnt = 1; attrcnt <= maxattr; attrcnt++) {
             for (int cluscnt = 1; cluscnt <= maxclus; //
@@ -237,22 +349,55 @@ public class AlgorithmTests {
                     p.print('\t');
 
                     // analysis
+                    long begin = System.nanoTime();
                     Clustering cl = algo.apply(dataSlice, rand, cluscnt);
+                    long dur = System.nanoTime() - begin;
                     p.print(cl.clusterCount());
                     p.print('\t');
-                    BCubed bc = new BCubed(g, cl); // automatically slices
-                    p.format("%.5f\t%.5f\t", bc.precision, bc.recall);
-                    Silhouette sil = new Silhouette(g.data, cl);
+                    // automatically slices
+                    Contingency ct = new Contingency(g, cl);
+                    p.format("%.5f\t%.5f\t", ct.precision, ct.recall);
+                    Silhouette sil;
+                    if (tupcnt <= fullSilhouetteMax) {
+                        sil = silhouette(g.data, cl);
+                    } else {
+                        sil = Silhouette.sampled(g.data, cl,
+                                Silhouette.DEFAULT_SAMPLES,
+                                Silhouette.DEFAULT_REFS, rand);
+                    }
                     p.format("%.5f\t%.5f\t", sil.noise, sil.compactness);
                     p.format("%.5f\t%.5f\t", sil.separation, sil.silhouette);
+                    p.format("%.5f\t", sil.silhouetteError);
+                    p.format("%.5f\t%.5f\t%.5f\t", ct.ari, ct.nmi, ct.purity);
 
                     p.println();
+
+                    // larger data sets would only take longer
+                    if (dur > maxtime * 1e9) break;
                 }
             }
         }
         p.close();
     }
 
+    /**
+     * Cluster a data set saved by an earlier run again, e.g. one in
+     * {@code results-usable-clus}, from {@code name.dataset} and
+     * {@code name.truth} in a directory. The algorithms are asked for as many
+     * clusters as the truth has.
+     */
+    public void reloadTest(Path dir, String name) throws IOException {
+        DataSet data = TextReader.readDataSet(dir.resolve(name + ".dataset"));
+        Clustering truth = TextReader.readClustering(dir.resolve(name
+                + ".truth"));
+        if (truth.tupleCount() != data.tupleCnt) {
+            throw new IOException(name + ": the truth has "
+                    + truth.tupleCount() + " tuples, the data set "
+                    + data.tupleCnt);
+        }
+        dataTest(name, data, truth, truth.clusterCount());
+    }
+
     public void commonDataTest(int tupleCount, int clusterCnt)
             throws IOException {
         DataGenerator g = new DataGenerator(rand, 2);
@@ -317,21 +462,31 @@ public class AlgorithmTests {
 
     private void dataTest(String name, DataSet data, Clustering truth, int clCnt)
             throws IOException {
-        data.print(bufferedFileout(name + ".dataset"));
-        truth.print(bufferedFileout(name + ".truth"));
+        TextWriter.write(data, outputDir.resolve(name + ".dataset"));
+        if (binaryRoundTrip) {
+            // round trip through the binary format, and cluster the result
+            Path bin = outputDir.resolve(name + ".dataset.bin");
+            DataSetFile.write(data, bin);
+            data = DataSetFile.read(bin);
+        }
+        TextWriter.write(truth, outputDir.resolve(name + ".truth"));
+        Npy.write(data, outputDir.resolve(name + ".dataset.npy"));
+        Npy.write(truth, outputDir.resolve(name + ".truth.npy"));
         {
             PrintStream stats = new PrintStream(outputDir.resolve(
                     name + ".truth.stats").toFile());
-            stats.println("Found Clusters\tB3 Precision\tB3 Recall");
+            stats.print("Found Clusters\tB3 Precision\tB3 Recall\t");
+            stats.println("ARI\tNMI\tPurity");
             stats.print(truth.clusterCount());
             stats.print('\t');
-            BCubed bc = new BCubed(truth, truth);
-            stats.format("%.5f\t%.5f\t", bc.precision, bc.recall);
+            Contingency ct = new Contingency(truth, truth);
+            stats.format("%.5f\t%.5f\t", ct.precision, ct.recall);
+            stats.format("%.5f\t%.5f\t%.5f\t", ct.ari, ct.nmi, ct.purity);
             stats.println();
             stats.println();
 
             stats.println("Noise\tCompactness\tSeparation\tSilhouette");
-            Silhouette sil = new Silhouette(data, truth);
+            Silhouette sil = silhouette(data, truth);
             stats.format("%.5f\t%.5f\t", sil.noise, sil.compactness);
             stats.format("%.5f\t%.5f\t", sil.separation, sil.silhouette);
             stats.println();
@@ -341,25 +496,30 @@ public class AlgorithmTests {
         }
         for (Map.Entry<String, ClusteringAlgo> t : algos.entrySet()) {
             Clustering cl = t.getValue().apply(data, rand, clCnt);
-            cl.print(bufferedFileout(name + "." + t.getKey()));
+            TextWriter.write(cl, outputDir.resolve(name + "." + t.getKey()));
+            Npy.write(cl, outputDir.resolve(name + "." + t.getKey() + ".npy"));
 
             PrintStream stats = new PrintStream(outputDir.resolve(
                     name + "." + t.getKey() + ".stats").toFile());
-            stats.println("Found Clusters\tB3 Precision\tB3 Recall");
+            stats.print("Found Clusters\tB3 Precision\tB3 Recall\t");
+            stats.println("ARI\tNMI\tPurity");
             stats.print(cl.clusterCount());
             stats.print('\t');
-            BCubed bc = new BCubed(truth, cl);
-            stats.format("%.5f\t%.5f\t", bc.precision, bc.recall);
+            Contingency ct = new Contingency(truth, cl);
+            stats.format("%.5f\t%.5f\t", ct.precision, ct.recall);
+            stats.format("%.5f\t%.5f\t%.5f\t", ct.ari, ct.nmi, ct.purity);
             stats.println();
             stats.println();
 
             stats.println("Noise\tCompactness\tSeparation\tSilhouette");
-            Silhouette sil = new Silhouette(data, cl);
+            Silhouette sil = silhouette(data, cl);
             stats.format("%.5f\t%.5f\t", sil.noise, sil.compactness);
             stats.format("%.5f\t%.5f\t", sil.separation, sil.silhouette);
             stats.println();
             stats.println();
 
+            Npy.write(sil, outputDir.resolve(name + "." + t.getKey()
+                    + ".stats.npy"));
             stats.println("ClusterID\tCompactness\tSeparation\tSilhouette");
             for (int c = 1; c <= sil.clusterCount(); c++) {
                 stats.format("%d\t%.5f\t", c, sil.compactness(c));
@@ -372,10 +532,4 @@ public class AlgorithmTests {
             stats.close();
         }
     }
-
-    private PrintStream bufferedFileout(String name) throws IOException {
-        File file = outputDir.resolve(name).toFile();
-        OutputStream fout = new FileOutputStream(file);
-        return new PrintStream(new BufferedOutputStream(fout), false);
-    }
 }
@@ -1,3 +1,7 @@
+/**
+ * B-Cubed precision and recall of a clustering against a ground truth. See
+ * {@link Contingency} for these and other measures from a single pass.
+ */
 public class BCubed {
 
     public final double precision;
@@ -7,45 +11,12 @@ public class BCubed {
     public final int    tupCnt;
 
     public BCubed(Clustering truth, Clustering cl) {
-        this.tupCnt = Math.min(truth.tupleCount(), cl.tupleCount());
-
-        // build confusion matrix
-        final int trcnt = truth.clusterCount() + 1;
-        final int clcnt = cl.clusterCount() + 1;
-        int[] mat = new int[trcnt * clcnt];
-        for (int i = 0; i < tupCnt; i++) {
-            int l = truth.clusterID(i);
-            int c = cl.clusterID(i);
-            if (c >= clcnt || l >= trcnt) System.out.println(c + ">?" + clcnt + " " + l + ">?" + trcnt);
-            mat[c + l * clcnt]++;   // truth l and clustering c
-        }
-
-        // precision
-        double prec = 0;
-        for (int c = 0; c < clcnt; c++) {
-            long clPrec = 0;
-            long clPop = -1;
-            for (int l = 0; l < trcnt; l++) {
-                long count = mat[c + l * clcnt];
-                clPop += count;
-                clPrec += (count - 1) * count;
-            }
-            if (clPop > 0) prec += clPrec / (double) clPop;
-        }
-        this.precision = prec / tupCnt;
+        this(new Contingency(truth, cl));
+    }
 
-        // recall
-        double recall = 0;
-        for (int l = 0; l < trcnt; l++) {
-            long trRecall = 0;
-            long trPop = -1;
-            for (int c = 0; c < clcnt; c++) {
-                long count = mat[c + l * clcnt];
-                trPop += count;
-                trRecall += (count - 1) * count;
-            }
-            if (trPop > 0) recall += trRecall / (double) trPop;
-        }
-        this.recall = recall / tupCnt;
+    public BCubed(Contingency table) {
+        this.tupCnt = table.tupCnt;
+        this.precision = table.precision;
+        this.recall = table.recall;
     }
 }
@@ -0,0 +1,120 @@
+/**
+ * A blocked kernel for the squared distances between many tuples and many
+ * centers at once, for data sets with many attributes.
+ * <p>
+ * Distances are expanded as {@code |x|^2 - 2 x.c + |c|^2}, so the work is
+ * dominated by dot products, like a matrix multiplication. Tuple norms are
+ * computed once per data set (see {@link DataSet#normsSq()}) and center norms
+ * once per call site, e.g. per iteration. Tuples and centers are processed in
+ * tiles that fit in the L1/L2 caches, and each tuple is multiplied against
+ * four centers at a time to reuse its loaded attributes.
+ * <p>
+ * The expanded form rounds differently from a direct sum of squared
+ * differences. Its absolute error grows with the norms rather than with the
+ * distance, so far from the origin it can swap centers whose distances are
+ * close; {@link #error} bounds it, for callers that must recheck such ties
+ * exactly. A tuple that coincides exactly with a center still gets a distance
+ * of exactly zero.
+ */
+public final class BlockedDistance {
+
+    /** Number of tuples per tile */
+    public static final int TUPLE_BLOCK  = 64;
+
+    /** Number of centers per tile */
+    public static final int CENTER_BLOCK = 32;
+
+    /**
+     * Smallest attribute count for which the blocked kernel beats per-pair
+     * distance loops.
+     */
+    public static final int MIN_ATTR     = 8;
+
+    private BlockedDistance() {}
+
+    /**
+     * Calculate the norm^2 of each tuple in a flat array.
+     *
+     * @param cnt The number of tuples
+     * @param out Receives one norm^2 per tuple
+     */
+    public static void normsSq(double[] flat, int cnt, int attrc,
+            double[] out) {
+        for (int t = 0, off = 0; t < cnt; t++, off += attrc) {
+            double n = 0;
+            for (int k = 0; k < attrc; k++) {
+                n += flat[off + k] * flat[off + k];
+            }
+            out[t] = n;
+        }
+    }
+
+    /**
+     * Calculate the distance^2 from each tuple in {@code [lo, hi)} to each
+     * center.
+     *
+     * @param centers The centers, as a flat array of tuples
+     * @param centerNormsSq The norm^2 of each center
+     * @param clusterCnt The number of centers
+     * @param out Receives the distance^2 from tuple {@code t} to center
+     *            {@code c} at {@code (t - lo) * clusterCnt + c}
+     */
+    public static void distSq(DataSet data, int lo, int hi, double[] centers,
+            double[] centerNormsSq, int clusterCnt, double[] out) {
+        final int attrc = data.attrCnt, clc = clusterCnt;
+        final double[] flat = data.flatData, tupNormsSq = data.normsSq();
+        for (int t0 = lo; t0 < hi; t0 += TUPLE_BLOCK) {
+            final int t1 = Math.min(t0 + TUPLE_BLOCK, hi);
+            for (int c0 = 0; c0 < clc; c0 += CENTER_BLOCK) {
+                final int c1 = Math.min(c0 + CENTER_BLOCK, clc);
+                for (int t = t0; t < t1; t++) {
+                    final int toff = t * attrc, ooff = (t - lo) * clc;
+                    final double tn = tupNormsSq[t];
+                    int c = c0;
+                    for (; c + 4 <= c1; c += 4) {
+                        final int off0 = c * attrc, off1 = off0 + attrc;
+                        final int off2 = off1 + attrc, off3 = off2 + attrc;
+                        double dot0 = 0, dot1 = 0, dot2 = 0, dot3 = 0;
+                        for (int k = 0; k < attrc; k++) {
+                            final double x = flat[toff + k];
+                            dot0 += x * centers[off0 + k];
+                            dot1 += x * centers[off1 + k];
+                            dot2 += x * centers[off2 + k];
+                            dot3 += x * centers[off3 + k];
+                        }
+                        out[ooff + c] = combine(tn, centerNormsSq[c], dot0);
+                        out[ooff + c + 1] = combine(tn, centerNormsSq[c + 1],
+                                dot1);
+                        out[ooff + c + 2] = combine(tn, centerNormsSq[c + 2],
+                                dot2);
+                        out[ooff + c + 3] = combine(tn, centerNormsSq[c + 3],
+                                dot3);
+                    }
+                    for (; c < c1; c++) {
+                        final int off = c * attrc;
+                        double dot = 0;
+                        for (int k = 0; k < attrc; k++) {
+                            dot += flat[toff + k] * centers[off + k];
+                        }
+                        out[ooff + c] = combine(tn, centerNormsSq[c], dot);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Return a bound on the absolute error of a distance^2 from
+     * {@link #distSq}, given the norm^2 of the tuple and of the center. The
+     * dot product and both norms are sums of {@code attrc} products, each off
+     * by at most {@code attrc} units in the last place of their magnitude.
+     */
+    public static double error(double xNormSq, double cNormSq, int attrc) {
+        return (attrc + 2) * Math.ulp(1.0) * (xNormSq + cNormSq);
+    }
+
+    private static double combine(double xn, double cn, double dot) {
+        // clamp rounding errors for (nearly) coincident points
+        return Math.max(0, xn + cn - 2 * dot);
+    }
+}
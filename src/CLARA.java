@@ -0,0 +1,158 @@
+import java.util.Random;
+
+/**
+ * CLARA (Clustering LARge Applications, Kaufman and Rousseeuw, 1990),
+ * k-Medoids for data sets too large for PAM.
+ * <p>
+ * {@link kMedoids} is run on several small random samples of the data, and
+ * the medoids of the sample with the lowest total distance over the whole
+ * data set are kept. Every sample after the first includes the best medoids
+ * so far, so the result can only improve from sample to sample. Each sample
+ * costs O(s^2) for the swap search and O(n*k) for the evaluation, where s is
+ * the sample size, so the runtime grows linearly with the tuple count.
+ */
+public class CLARA extends Clustering {
+
+    /** Number of samples, as suggested by Kaufman and Rousseeuw */
+    public static final int DEFAULT_SAMPLES = 5;
+
+    private final int[]     mapping;
+
+    private final int[]     medoids;
+
+    private final int[]     _mapping;    // scratch: mapping of each sample
+
+    private final int[]     _cand;       // medoids of each sample
+
+    private final int[]     _init;       // initial medoids of each search
+
+    private final int[]     _perm;       // permutation of the tuples
+
+    private final int[]     _sample;     // tuple indices of each sample
+
+    private final DataSet   _sampleData;
+
+    private final int       clusterCnt;
+
+    private final String    desc;
+
+    /**
+     * @param samples The number of samples to cluster
+     * @param sampleSize The tuples per sample, usually
+     *            {@code 40 + 2 * clusterCnt}
+     */
+    public CLARA(DataSet data, int clusterCnt, int samples, int sampleSize,
+            Random rand) {
+        super(data);
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = this.clusterCnt = clusterCnt;
+        final int size = Math.min(Math.max(sampleSize, clc), tupc);
+        this.desc = String.format("%s(clusterCnt=%d, samples=%d, size=%d)",
+                getClass().getSimpleName(), clc, samples, size);
+
+        final int[] mapping = this.mapping = new int[tupc];
+        final int[] scratch = this._mapping = new int[tupc];
+        final int[] medoids = this.medoids = new int[clc];
+        final int[] cand = this._cand = new int[clc];
+        final int[] perm = this._perm = new int[tupc];
+        final int[] sample = this._sample = new int[size];
+        final DataSet sdata = this._sampleData = new DataSet(size, attrc,
+                new double[size * attrc]);
+        for (int t = 0; t < tupc; t++) {
+            perm[t] = t;
+        }
+
+        // start each swap search from the first tuples of the sample, which
+        // are the best medoids so far, or random
+        final int[] init = this._init = new int[clc];
+        for (int c = 0; c < clc; c++) {
+            init[c] = (size > 0) ? c % size : 0;
+        }
+
+        double bestCost = Double.POSITIVE_INFINITY;
+        int kept = 0;
+        for (int s = 0; s < samples && size > 0; s++) {
+            draw(sample, medoids, kept, perm, rand);
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(data.flatData, sample[i] * attrc,
+                        sdata.flatData, i * attrc, attrc);
+            }
+            kMedoids pam = new kMedoids(sdata, clc, init);
+            for (int c = 0; c < clc; c++) {
+                cand[c] = sample[pam.medoid(c + 1)];
+            }
+
+            // evaluate the medoids on the whole data set
+            double cost = kMedoids.assign(data, cand, scratch);
+            if (cost < bestCost) {
+                bestCost = cost;
+                System.arraycopy(cand, 0, medoids, 0, clc);
+                kept = clc;
+                System.arraycopy(scratch, 0, mapping, 0, tupc);
+            }
+
+            // all samples are the same if they hold the whole data set
+            if (size == tupc) break;
+        }
+    }
+
+    public CLARA(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, DEFAULT_SAMPLES, 40 + 2 * clusterCnt, rand);
+    }
+
+    /**
+     * Draw a sample without replacement, starting with the given medoids, by
+     * partially shuffling a permutation of the tuples.
+     *
+     * @param kept The number of medoids to include
+     */
+    private static void draw(int[] sample, int[] medoids, int kept,
+            int[] perm, Random rand) {
+        int cnt = 0;
+        for (int c = 0; c < kept; c++) {
+            if (!contains(sample, cnt, medoids[c])) sample[cnt++] = medoids[c];
+        }
+        final int first = cnt;
+        for (int i = 0; cnt < sample.length; i++) {
+            int j = i + rand.nextInt(perm.length - i);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+            if (!contains(sample, first, perm[i])) sample[cnt++] = perm[i];
+        }
+    }
+
+    private static boolean contains(int[] a, int cnt, int value) {
+        for (int i = 0; i < cnt; i++) {
+            if (a[i] == value) return true;
+        }
+        return false;
+    }
+
+    /** Return the tuple index of the medoid of a cluster */
+    public int medoid(int clusterID) {
+        return medoids[clusterID - 1];
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * CLARANS (Ng and Han, 2002), k-Medoids by randomized search.
+ * <p>
+ * Starting from random medoids, random swaps of a medoid with a non-medoid
+ * are tried, and each one that reduces the total distance is applied. A local
+ * minimum is declared after {@code maxNeighbor} failed attempts in a row, and
+ * the search is restarted {@code numLocal} times, keeping the best result.
+ * Each attempt takes one pass over the tuples, using their cached distances
+ * to the closest and second-closest medoid, as in {@link kMedoids}. Tuples
+ * are grouped by their closest medoid, and the triangle inequality skips
+ * groups (and then single tuples) that cannot move to the candidate without
+ * computing their distance to it.
+ * <p>
+ * Ng and Han suggest {@code maxNeighbor} of 1.25% of k*(n-k). Since every
+ * attempt costs O(n), the default is a fixed bound instead, which keeps the
+ * runtime linear in the tuple count.
+ */
+public class CLARANS extends Clustering {
+
+    public static final int DEFAULT_NUM_LOCAL    = 2;
+
+    public static final int DEFAULT_MAX_NEIGHBOR = 250;
+
+    private final int[]     mapping;
+
+    private final int[]     medoids;    // best medoids over all searches
+
+    private final int[]     _medoids;   // medoids of the current search
+
+    private final int[]     _nearest;   // per tuple: closest medoid
+
+    private final int[]     _second;    // per tuple: second-closest medoid
+
+    private final double[]  _nearD;     // per tuple: distance to closest
+
+    private final double[]  _secondD;   // per tuple: distance to second
+
+    private final double[]  _qdist;     // distance from candidate to medoids
+
+    private final int[]     _order;     // tuples grouped by closest medoid
+
+    private final int[]     _start;     // start of each group in _order
+
+    private final double[]  _radius;    // largest distance in each group
+
+    private final int       clusterCnt;
+
+    private final String    desc;
+
+    /**
+     * @param numLocal The number of searches from random medoids
+     * @param maxNeighbor The number of failed swap attempts in a row that ends
+     *            a search
+     */
+    public CLARANS(DataSet data, int clusterCnt, int numLocal,
+            int maxNeighbor, Random rand) {
+        super(data);
+        final int tupc = data.tupleCnt, clc = this.clusterCnt = clusterCnt;
+        this.desc = String.format(
+                "%s(clusterCnt=%d, numLocal=%d, maxNeighbor=%d)", getClass()
+                        .getSimpleName(), clc, numLocal, maxNeighbor);
+
+        final int[] medoids = this.medoids = new int[clc];
+        final int[] cur = this._medoids = new int[clc];
+        this._nearest = new int[tupc];
+        this._second = new int[tupc];
+        this._nearD = new double[tupc];
+        this._secondD = new double[tupc];
+        this._qdist = new double[clc];
+        this._order = new int[tupc];
+        this._start = new int[clc + 1];
+        this._radius = new double[clc];
+
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int l = 0; l < numLocal && tupc > 0; l++) {
+            // distinct random medoids, unless there are too few tuples
+            for (int c = 0; c < clc; c++) {
+                do {
+                    cur[c] = rand.nextInt(tupc);
+                } while (c < tupc && isMedoid(cur[c], c));
+            }
+            for (int t = 0; t < tupc; t++) {
+                nearest(data, t);
+            }
+            group();
+
+            // try random swaps medoids[c] -> q until none helps
+            for (int j = 0; j < maxNeighbor && clc < tupc; j++) {
+                final int c = rand.nextInt(clc), q = rand.nextInt(tupc);
+                if (isMedoid(q, clc)) continue;
+                if (swapError(data, c, q) >= 0) continue;
+                swap(data, c, q);
+                j = -1;
+            }
+
+            double cost = 0;
+            for (int t = 0; t < tupc; t++) {
+                cost += _nearD[t];
+            }
+            if (cost < bestCost) {
+                bestCost = cost;
+                System.arraycopy(cur, 0, medoids, 0, clc);
+            }
+        }
+
+        this.mapping = new int[tupc];
+        if (tupc > 0) kMedoids.assign(data, medoids, mapping);
+    }
+
+    public CLARANS(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, DEFAULT_NUM_LOCAL, DEFAULT_MAX_NEIGHBOR, rand);
+    }
+
+    /** Calculate the change in total distance for replacing medoids[c] -> q */
+    private double swapError(DataSet data, int c, int q) {
+        final int[] nearest = this._nearest;
+        final double[] nearD = this._nearD, secondD = this._secondD;
+        final double[] qdist = this._qdist;
+        for (int m = 0; m < clusterCnt; m++) {
+            qdist[m] = data.dist(q, _medoids[m]);
+        }
+        double err = 0;
+        for (int m = 0; m < clusterCnt; m++) {
+            // q is farther than medoid m from all of its tuples
+            if (m != c && qdist[m] >= 2 * _radius[m]) continue;
+            for (int i = _start[m]; i < _start[m + 1]; i++) {
+                final int t = _order[i];
+                // lower bound on the distance from t to q
+                final double lower = qdist[m] - nearD[t];
+                if (m == c) {
+                    // t moves to q or its second-closest medoid
+                    final double swapD = (lower >= secondD[t]) ? secondD[t]
+                            : data.dist(q, t);
+                    err += Math.min(swapD, secondD[t]) - nearD[t];
+                } else if (lower < nearD[t]) {
+                    // t moves to q if it is closer
+                    final double swapD = data.dist(q, t);
+                    if (swapD < nearD[t]) err += swapD - nearD[t];
+                }
+            }
+        }
+        return err;
+    }
+
+    /** Replace medoids[c] -> q. */
+    private void swap(DataSet data, int c, int q) {
+        _medoids[c] = q;
+        for (int t = 0; t < _nearest.length; t++) {
+            final double d = data.dist(q, t);
+            if (_nearest[t] == c || _second[t] == c) {
+                nearest(data, t);
+            } else if (d < _nearD[t]) {
+                _second[t] = _nearest[t];
+                _secondD[t] = _nearD[t];
+                _nearest[t] = c;
+                _nearD[t] = d;
+            } else if (d < _secondD[t]) {
+                _second[t] = c;
+                _secondD[t] = d;
+            }
+        }
+        group();
+    }
+
+    /** Group the tuples by their closest medoid */
+    private void group() {
+        final int[] start = this._start;
+        Arrays.fill(start, 0);
+        Arrays.fill(_radius, 0);
+        for (int t = 0; t < _nearest.length; t++) {
+            final int m = _nearest[t];
+            start[m + 1]++;
+            _radius[m] = Math.max(_radius[m], _nearD[t]);
+        }
+        for (int m = 0; m < clusterCnt; m++) {
+            start[m + 1] += start[m];
+        }
+        // fill each group, which moves each start to the next group's
+        for (int t = 0; t < _nearest.length; t++) {
+            _order[start[_nearest[t]]++] = t;
+        }
+        System.arraycopy(start, 0, start, 1, clusterCnt);
+        start[0] = 0;
+    }
+
+    /** Find the closest and second-closest medoids of tuple t */
+    private void nearest(DataSet data, int t) {
+        int closest = -1, secondClosest = -1;
+        double closestD = Double.POSITIVE_INFINITY;
+        double secondClosestD = closestD;
+        for (int c = 0; c < clusterCnt; c++) {
+            double d = data.dist(_medoids[c], t);
+            if (d < closestD) {
+                secondClosestD = closestD;
+                secondClosest = closest;
+                closestD = d;
+                closest = c;
+            } else if (d < secondClosestD) {
+                secondClosestD = d;
+                secondClosest = c;
+            }
+        }
+        _nearest[t] = closest;
+        _second[t] = secondClosest;
+        _nearD[t] = closestD;
+        _secondD[t] = secondClosestD;
+    }
+
+    /** Return whether tuple q is one of the first cnt current medoids */
+    private boolean isMedoid(int q, int cnt) {
+        for (int c = 0; c < cnt; c++) {
+            if (_medoids[c] == q) return true;
+        }
+        return false;
+    }
+
+    /** Return the tuple index of the medoid of a cluster */
+    public int medoid(int clusterID) {
+        return medoids[clusterID - 1];
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -25,6 +25,12 @@ public class C_means2 extends Clustering
 	private int dimensions;
 	//used for calculating the distance measure
 	double[] tempDist;
+	//norm^2 of each center, for the blocked distance kernel
+	private double[] centerNorms;
+	//distance^2 from a block of tuples to every center
+	private double[] blockDist;
+	//relative size below which a blocked distance is recomputed directly
+	private static final double NEAR = 1e-9;
 	
 	public C_means2(DataSet data, int numCluster, double[] initialCenters) 
 	{
@@ -52,6 +58,13 @@ public class C_means2 extends Clustering
 		int counter = 1;
 		//initialize variable to hold distance measure
 		tempDist = new double[numClusters];
+		//only wide data sets use the blocked distance kernel
+		boolean blocked = dimensions >= BlockedDistance.MIN_ATTR;
+		if(blocked)
+		{
+			centerNorms = new double[numClusters];
+			blockDist = new double[BlockedDistance.TUPLE_BLOCK * numClusters];
+		}
 		//used for calculating the c-means value
 		double div;
 		//used for keeping track of run iterations
@@ -59,29 +72,54 @@ public class C_means2 extends Clustering
 		//main component of algorithm
 		while(!match)
 		{
+			if(blocked)
+			{
+				BlockedDistance.normsSq(newCenters.flatData, numClusters, dimensions, centerNorms);
+			}
 			//calculate distance for each tuple
 			for(int i = 0; i<size; i++)
 			{
 				//initialize variable
 				div = 0;
-				//calculate distance from center to each point
-				for(int j = 0; j<numClusters; j++)
+				//euclidean dist values, at dist[off + j] for each center j
+				double[] dist = tempDist;
+				int off = 0;
+				if(blocked)
+				{
+					//calculate distances for a whole block of tuples at once
+					int b = i % BlockedDistance.TUPLE_BLOCK;
+					if(b == 0)
+					{
+						int end = Math.min(i + BlockedDistance.TUPLE_BLOCK, size);
+						BlockedDistance.distSq(originalData, i, end, newCenters.flatData, centerNorms, numClusters, blockDist);
+					}
+					dist = blockDist;
+					off = b * numClusters;
+					double norm = originalData.normsSq()[i];
+					for(int j = 0; j<numClusters; j++)
+					{
+						//the expanded form cancels badly for nearly coincident points
+						if(dist[off + j] <= NEAR * (norm + centerNorms[j]))
+						{
+							dist[off + j] = originalData.distSq(i, newCenters.flatData, j * dimensions);
+						}
+					}
+				}
+				else
 				{
-					//load the tempDist array with euclidean dist values
-					for(int x = 0; x<dimensions; x++)
+					for(int j = 0; j<numClusters; j++)
 					{
-						tempDist[j] += euclideanDist(originalData.getAttr(i, x), newCenters.getAttr(j, x));
+						tempDist[j] = originalData.distSq(i, newCenters.flatData, j * dimensions);
 					}
-					
 				}
 				/*
 				 * calculate divisor in C-means algorithm
 				 */
 				for(int j = 0; j<numClusters; j++)
 				{
-					if(tempDist[j] != 0.0)
+					if(dist[off + j] != 0.0)
 					{
-						div += (1/tempDist[j]);
+						div += (1/dist[off + j]);
 					}
 				}
 				/*
@@ -90,7 +128,7 @@ public class C_means2 extends Clustering
 				 */
 				for(int j = 0; j<numClusters; j++)
 				{
-					if(tempDist[j] == 0.0)
+					if(dist[off + j] == 0.0)
 					{
 						MStep[j][i] = 1;
 						for(int x = 0; x<numClusters; x++)
@@ -103,11 +141,7 @@ public class C_means2 extends Clustering
 						break;
 					}
 					else
-						MStep[j][i] = (1/tempDist[j]) / div;
-				}
-				for(int n = 0; n<tempDist.length; n++)
-				{
-					tempDist[n] = 0;
+						MStep[j][i] = (1/dist[off + j]) / div;
 				}
 			}
 			/*
@@ -175,11 +209,6 @@ public class C_means2 extends Clustering
 		}
 	}
 	
-	private double euclideanDist(double x1, double x2)
-	{
-		return (x1 - x2) * (x1 - x2);
-	}
-
 	@Override
 	public int clusterCount() {
 		// TODO Auto-generated method stub
@@ -202,6 +231,29 @@ public class C_means2 extends Clustering
 		//returns index +1 to help with human readability
 		return maxIndex + 1;
 	}
+
+	@Override
+	public void labels(int[] out)
+	{
+		//same as clusterID, but walks each row of MStep in order
+		//and falls back to cluster 1 if every value is NaN
+		double[] maxHere = new double[size];
+		for(int t = 0; t<size; t++)
+		{
+			out[t] = 1;
+		}
+		for(int i = 0; i<numClusters; i++)
+		{
+			for(int t = 0; t<size; t++)
+			{
+				if(MStep[i][t] >= maxHere[t])
+				{
+					maxHere[t] = MStep[i][t];
+					out[t] = i + 1;
+				}
+			}
+		}
+	}
 	
 	public void printClusterCenters()
 	{
@@ -33,6 +33,13 @@ public abstract class Clustering {
          */
     }
 
+    /**
+     * For clusterings of data that is not held in a {@link DataSet}, e.g. an
+     * {@link OffHeapDataSet} or {@link FloatDataSet}. The same rules for
+     * storing allocations in member variables apply.
+     */
+    protected Clustering() {}
+
     /** Return the total number of tuples */
     public abstract int tupleCount();
 
@@ -59,6 +66,25 @@ public abstract class Clustering {
      */
     public abstract int clusterID(int tuple);
 
+    /**
+     * Copy the cluster ID of every tuple into an array, as returned by
+     * {@link #clusterID(int)}.
+     * <p>
+     * Code that looks up many tuples should call this once instead of
+     * {@code clusterID()} per tuple. Subclasses that store their mapping
+     * should override it with a bulk copy.
+     * 
+     * @param out Receives the cluster ID of tuple {@code t} at
+     *            {@code out[t]}. Must hold at least {@code tupleCount()}
+     *            values.
+     */
+    public void labels(int[] out) {
+        final int tupc = tupleCount();
+        for (int t = 0; t < tupc; t++) {
+            out[t] = clusterID(t);
+        }
+    }
+
     /**
      * Return a human-readable string description of the clustering, including
      * the algorithm and a summary of the parameters used.
@@ -84,10 +110,13 @@ public abstract class Clustering {
         p.println(')');
 
         // tuples
-        for (int t = 0; t < tupleCount(); t++) {
+        final int tupc = tupleCount();
+        int[] labels = new int[tupc];
+        labels(labels);
+        for (int t = 0; t < tupc; t++) {
             p.print(t + 1);
             p.print('\t');
-            p.print(clusterID(t));
+            p.print(labels[t]);
             p.println();
         }
         p.flush();
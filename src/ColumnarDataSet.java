@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/**
+ * A data set stored by attribute (structure of arrays), rather than by tuple
+ * like {@link DataSet}.
+ * <p>
+ * Each attribute is a contiguous column of {@link #tupleCnt} values. This
+ * suits code that looks at one attribute across all tuples, like bounding
+ * boxes, normalization and the splits of spatial indexes. It also lets the
+ * distance kernels run across tuples, one tuple per vector lane, so data sets
+ * with only 2-4 attributes still fill whole vectors. See
+ * {@link ColumnarKMeans}.
+ */
+public final class ColumnarDataSet {
+
+    /** The number of tuples in the data set. Strictly non-negative. */
+    public final int      tupleCnt;
+
+    /** The number of attributes per tuple. Strictly positive. */
+    public final int      attrCnt;
+
+    /**
+     * The data set as a flat array of columns, laid out sequentially:
+     * <p>
+     * {@code [tup1.attr1, tup2.attr1, ..., tup1.attr2, tup2.attr2, ...]}
+     * <p>
+     * Attribute {@code k} of tuple {@code t} is at
+     * {@code k * tupleCnt + t}. Users <b>should not modify</b> the array.
+     */
+    public final double[] flatData;
+
+    public ColumnarDataSet(int tupleCnt, int attrCnt, double[] flatData) {
+        assert (flatData.length >= (long) tupleCnt * attrCnt);
+        this.tupleCnt = tupleCnt;
+        this.attrCnt = attrCnt;
+        this.flatData = flatData;
+    }
+
+    /** Transpose a data set into columns. */
+    public static ColumnarDataSet copyOf(DataSet data) {
+        final int tupc = data.tupleCnt, attrc = data.attrCnt;
+        final double[] rows = data.flatData;
+        double[] cols = new double[tupc * attrc];
+        for (int k = 0; k < attrc; k++) {
+            final int off = k * tupc;
+            for (int t = 0; t < tupc; t++) {
+                cols[off + t] = rows[t * attrc + k];
+            }
+        }
+        return new ColumnarDataSet(tupc, attrc, cols);
+    }
+
+    /** Transpose the data set back into tuples. */
+    public DataSet toDataSet() {
+        final int tupc = tupleCnt, attrc = attrCnt;
+        double[] rows = new double[tupc * attrc];
+        for (int k = 0; k < attrc; k++) {
+            final int off = k * tupc;
+            for (int t = 0; t < tupc; t++) {
+                rows[t * attrc + k] = flatData[off + t];
+            }
+        }
+        return new DataSet(tupc, attrc, rows);
+    }
+
+    /** Convenience method to lookup attributes from the data set */
+    public double getAttr(int tup, int attr) {
+        assert tup < tupleCnt && attr < attrCnt;
+        return flatData[attr * tupleCnt + tup];
+    }
+
+    /**
+     * Calculate the bounding box of the data set.
+     * 
+     * @param min Receives the smallest value of each attribute
+     * @param max Receives the largest value of each attribute
+     */
+    public void bounds(double[] min, double[] max) {
+        final int tupc = tupleCnt;
+        for (int k = 0; k < attrCnt; k++) {
+            final int off = k * tupc;
+            double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+            for (int t = 0; t < tupc; t++) {
+                lo = Math.min(lo, flatData[off + t]);
+                hi = Math.max(hi, flatData[off + t]);
+            }
+            min[k] = lo;
+            max[k] = hi;
+        }
+    }
+
+    /**
+     * Calculate the (euclidean) distance^2 from each tuple in
+     * {@code [lo, hi)} to a single point, e.g. a cluster center. Uses
+     * {@link VectorDistance} when {@link DataSet#VECTORIZED} is set.
+     * <p>
+     * Vectors run across tuples, and the attributes of each tuple are summed
+     * in order either way, so the results are identical to a scalar loop over
+     * the attributes. That is also what {@link DataSet#distSq(int, double[],
+     * int)} computes, unless it is vectorized itself.
+     * 
+     * @param pt The array containing the point, as a tuple
+     * @param off The starting offset of the point in its array
+     * @param out Receives the distance^2 of tuple {@code t} at
+     *            {@code t - lo}
+     */
+    public void distSq(int lo, int hi, double[] pt, int off, double[] out) {
+        assert 0 <= lo && lo <= hi && hi <= tupleCnt;
+        final int tupc = tupleCnt;
+        if (DataSet.VECTORIZED) {
+            VectorDistance.distSqColumns(flatData, tupc, attrCnt, lo, hi, pt,
+                    off, out);
+            return;
+        }
+        Arrays.fill(out, 0, hi - lo, 0);
+        for (int k = 0; k < attrCnt; k++) {
+            final int col = k * tupc;
+            final double x = pt[off + k];
+            for (int t = lo; t < hi; t++) {
+                double d = flatData[col + t] - x;
+                out[t - lo] += d * d;
+            }
+        }
+    }
+
+    /**
+     * Find the center closest to each tuple in {@code [lo, hi)}, comparing
+     * all of those tuples to one center at a time. Ties go to the lowest center
+     * index, as in {@link KMeans#nearestCenter}.
+     * 
+     * @param centers The cluster centers, as a flat array of tuples
+     * @param out Receives the index of the closest center of tuple {@code t}
+     *            at {@code t - lo}
+     * @param minDistSq Receives the distance^2 to that center, at
+     *            {@code t - lo}
+     * @param scratch Scratch space for at least {@code hi - lo} values
+     */
+    public void nearestCenters(int lo, int hi, double[] centers,
+            int clusterCnt, int[] out, double[] minDistSq, double[] scratch) {
+        final int n = hi - lo;
+        Arrays.fill(out, 0, n, 0);
+        Arrays.fill(minDistSq, 0, n, Double.POSITIVE_INFINITY);
+        for (int c = 0; c < clusterCnt; c++) {
+            distSq(lo, hi, centers, c * attrCnt, scratch);
+            for (int i = 0; i < n; i++) {
+                if (scratch[i] >= minDistSq[i]) continue;
+                minDistSq[i] = scratch[i];
+                out[i] = c;
+            }
+        }
+    }
+}
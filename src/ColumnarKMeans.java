@@ -0,0 +1,125 @@
+import java.util.Random;
+
+/**
+ * {@link KMeans} over a {@link ColumnarDataSet}.
+ * <p>
+ * Tuples are assigned a block at a time with
+ * {@link ColumnarDataSet#nearestCenters}, which compares the whole block to
+ * one center at a time, and the new centers are summed one column at a time.
+ * Each sum adds its tuples in order, so with the same initial centers the
+ * result matches the sequential {@link KMeans} whenever their distances do.
+ */
+public class ColumnarKMeans extends Clustering {
+
+    /** Tuples per call to {@link ColumnarDataSet#nearestCenters} */
+    public static final int TUPLE_BLOCK = 1024;
+
+    private final int[]     mapping;
+
+    private final int[]     _nearest;    // closest center of each block tuple
+
+    private final double[]  _minDistSq;  // distance^2 to that center
+
+    private final double[]  _scratch;
+
+    private final double[]  newCenters;
+
+    private final int[]     newCounts;
+
+    private final int       clusterCnt;
+
+    private final String    desc;
+
+    /**
+     * @param centers The initial centers, as a flat array of tuples, updated
+     *            in place
+     */
+    public ColumnarKMeans(ColumnarDataSet data, int clusterCnt,
+            double[] centers) {
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        assert (centers.length >= clusterCnt * attrc);
+        this.desc = String.format("%s(clusterCnt=%d)",
+                getClass().getSimpleName(), clusterCnt);
+
+        this.clusterCnt = clusterCnt;
+        final int[] mapping = this.mapping = new int[tupc];
+        final int[] nearest = this._nearest = new int[TUPLE_BLOCK];
+        this._minDistSq = new double[TUPLE_BLOCK];
+        this._scratch = new double[TUPLE_BLOCK];
+        final double[] newCenters = this.newCenters = new double[clusterCnt
+                * attrc];
+        final int[] newCounts = this.newCounts = new int[clusterCnt];
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int lo = 0; lo < tupc; lo += TUPLE_BLOCK) {
+                final int hi = Math.min(lo + TUPLE_BLOCK, tupc);
+                data.nearestCenters(lo, hi, centers, clusterCnt, nearest,
+                        _minDistSq, _scratch);
+                for (int t = lo; t < hi; t++) {
+                    final int c = nearest[t - lo];
+                    if (mapping[t] != c) {
+                        changed = true;
+                        mapping[t] = c;
+                    }
+                    newCounts[c]++;
+                }
+            }
+
+            // add each column to the new centers
+            final double[] cols = data.flatData;
+            for (int k = 0; k < attrc; k++) {
+                final int col = k * tupc;
+                for (int t = 0; t < tupc; t++) {
+                    newCenters[mapping[t] * attrc + k] += cols[col + t];
+                }
+            }
+
+            // calculate new cluster centers
+            KMeans.moveCenters(centers, newCenters, newCounts, clusterCnt,
+                    attrc);
+        }
+    }
+
+    public ColumnarKMeans(ColumnarDataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand));
+    }
+
+    /**
+     * Find random starting points for clusters, drawn like
+     * {@link KMeans#initCenters}.
+     */
+    public static double[] initCenters(ColumnarDataSet data, int clCnt,
+            Random rand) {
+        final int attrc = data.attrCnt;
+        double[] centers = new double[attrc * clCnt];
+        for (int c = 0; c < clCnt; c++) {
+            int t = rand.nextInt(data.tupleCnt);
+            for (int k = 0; k < attrc; k++) {
+                centers[c * attrc + k] = data.getAttr(t, k);
+            }
+        }
+        return centers;
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+ * A sparse contingency table between two clusterings, usually a ground truth
+ * and an algorithm's result, and the external quality measures derived from
+ * it.
+ * <p>
+ * The table is built in one pass over the labels. Only non-empty cells are
+ * stored, in an open-addressing hash table keyed by the pair of cluster IDs,
+ * so its size is bounded by the tuple count rather than by the product of
+ * the cluster counts. All measures are then computed from the cells and the
+ * per-cluster totals.
+ * <p>
+ * Noise (cluster ID 0) is treated as one more cluster in every measure.
+ */
+public class Contingency {
+
+    public final int    tupCnt;
+
+    /** B-Cubed precision, see {@link BCubed} */
+    public final double precision;
+
+    /** B-Cubed recall, see {@link BCubed} */
+    public final double recall;
+
+    /** Adjusted Rand Index (Hubert and Arabie, 1985) */
+    public final double ari;
+
+    /**
+     * Normalized mutual information, normalized by the arithmetic mean of the
+     * two entropies
+     */
+    public final double nmi;
+
+    /** Fraction of tuples in the majority truth cluster of their cluster */
+    public final double purity;
+
+    private final long[] keys;      // hash table: truth << 32 | cluster, or -1
+
+    private final int[]  counts;    // hash table: tuples in each cell
+
+    private final int[]  truthPop;  // tuples in each truth cluster
+
+    private final int[]  clPop;     // tuples in each found cluster
+
+    public Contingency(Clustering truth, Clustering cl) {
+        final int tupc = this.tupCnt = Math.min(truth.tupleCount(),
+                cl.tupleCount());
+        final int trcnt = truth.clusterCount() + 1;
+        final int clcnt = cl.clusterCount() + 1;
+        int[] truthIDs = new int[truth.tupleCount()];
+        int[] clIDs = new int[cl.tupleCount()];
+        truth.labels(truthIDs);
+        cl.labels(clIDs);
+
+        // hash table with a load factor of at most 1/2
+        long cells = Math.min(tupc, (long) trcnt * clcnt);
+        int slots = Integer.highestOneBit((int) Math.max(cells, 1)) << 2;
+        this.keys = new long[slots];
+        this.counts = new int[slots];
+        Arrays.fill(keys, -1);
+        this.truthPop = new int[trcnt];
+        this.clPop = new int[clcnt];
+        for (int i = 0; i < tupc; i++) {
+            final int l = truthIDs[i], c = clIDs[i];
+            if (l < 0 || l >= trcnt || c < 0 || c >= clcnt) {
+                throw new IllegalArgumentException("cluster ID out of range: "
+                        + l + " of " + trcnt + ", " + c + " of " + clcnt);
+            }
+            counts[insert((long) l << 32 | c)]++;
+            truthPop[l]++;
+            clPop[c]++;
+        }
+
+        // per-cluster sums over the cells
+        long[] clPairs = new long[clcnt];  // ordered same-truth pairs
+        long[] trPairs = new long[trcnt];
+        int[] clMax = new int[clcnt];      // largest truth cluster
+        long pairs = 0;                    // unordered pairs in the same cell
+        double mi = 0;
+        final double n = tupc;
+        for (int s = 0; s < slots; s++) {
+            if (keys[s] == -1) continue;
+            final int l = (int) (keys[s] >>> 32), c = (int) keys[s];
+            final long count = counts[s];
+            clPairs[c] += (count - 1) * count;
+            trPairs[l] += (count - 1) * count;
+            clMax[c] = Math.max(clMax[c], counts[s]);
+            pairs += count * (count - 1) / 2;
+            mi += count / n * Math.log(n * count / ((double) truthPop[l]
+                    * clPop[c]));
+        }
+
+        // B-Cubed, excluding each tuple from its own cluster
+        double prec = 0, hcl = 0;
+        long clPairsSum = 0, pure = 0;
+        for (int c = 0; c < clcnt; c++) {
+            final long pop = clPop[c];
+            if (pop > 1) prec += clPairs[c] / (double) (pop - 1);
+            if (pop > 0) hcl -= pop / n * Math.log(pop / n);
+            clPairsSum += pop * (pop - 1) / 2;
+            pure += clMax[c];
+        }
+        double rec = 0, htr = 0;
+        long trPairsSum = 0;
+        for (int l = 0; l < trcnt; l++) {
+            final long pop = truthPop[l];
+            if (pop > 1) rec += trPairs[l] / (double) (pop - 1);
+            if (pop > 0) htr -= pop / n * Math.log(pop / n);
+            trPairsSum += pop * (pop - 1) / 2;
+        }
+        this.precision = prec / tupc;
+        this.recall = rec / tupc;
+        this.purity = pure / n;
+
+        // adjusted for chance; identical trivial clusterings score 1
+        final double allPairs = n * (n - 1) / 2;
+        final double expected = allPairs > 0 ? trPairsSum
+                * (double) clPairsSum / allPairs : 0;
+        final double maxIndex = (trPairsSum + clPairsSum) / 2.0;
+        this.ari = maxIndex == expected ? 1 : (pairs - expected)
+                / (maxIndex - expected);
+        this.nmi = htr + hcl > 0 ? 2 * mi / (htr + hcl) : 1;
+    }
+
+    /** Return the number of tuples with a given truth and found cluster ID */
+    public int count(int truthID, int clusterID) {
+        int s = find((long) truthID << 32 | clusterID);
+        return s < 0 ? 0 : counts[s];
+    }
+
+    /** Return the number of non-empty cells */
+    public int cellCount() {
+        int cells = 0;
+        for (long key : keys) {
+            if (key != -1) cells++;
+        }
+        return cells;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (keys.length - 1);
+    }
+
+    /** Find or create the hash slot of a cell */
+    private int insert(long key) {
+        int s = slot(key);
+        while (keys[s] != key && keys[s] != -1) {
+            s = (s + 1) & (keys.length - 1);
+        }
+        keys[s] = key;
+        return s;
+    }
+
+    /** Find the hash slot of a cell, or -1 if the cell is empty */
+    private int find(long key) {
+        int s = slot(key);
+        while (keys[s] != key) {
+            if (keys[s] == -1) return -1;
+            s = (s + 1) & (keys.length - 1);
+        }
+        return s;
+    }
+}
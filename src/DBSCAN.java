@@ -7,6 +7,10 @@ public class DBSCAN extends Clustering {
 
     private final int[]  tupqueue;
 
+    private final int[]  _neighbors;
+
+    private RangeIndex   _index;
+
     private final int    clusterCnt;
 
     private final String desc;
@@ -15,6 +19,7 @@ public class DBSCAN extends Clustering {
         super(data);
         this.mapping = new int[data.tupleCnt];
         this.tupqueue = new int[data.tupleCnt];
+        this._neighbors = new int[data.tupleCnt];
         this.clusterCnt = dbscan(data, eps, minPts);
         this.desc = String.format("%s(eps=%.3f, minpts=%d)", getClass()
                 .getSimpleName(), eps, minPts);
@@ -24,6 +29,7 @@ public class DBSCAN extends Clustering {
         super(data);
         this.mapping = new int[data.tupleCnt];
         this.tupqueue = new int[data.tupleCnt];
+        this._neighbors = new int[data.tupleCnt];
 
         final int maxn = 30;
         final int tupx = Math.min(data.tupleCnt, 100);
@@ -37,9 +43,10 @@ public class DBSCAN extends Clustering {
             for (int j = 0; j < samp; j++) {
                 final int q = rng.nextInt(data.tupleCnt);
                 double d2 = data.distSq(t, q);
+                // most samples are not among the maxn nearest
+                if (d2 >= dist[maxn - 1]) continue;
                 int ins = Arrays.binarySearch(dist, d2);
                 if (ins < 0) ins = -ins - 1;
-                if (ins >= maxn) continue;
                 System.arraycopy(dist, ins, dist, ins + 1, maxn - ins - 1);
                 dist[ins] = d2;
             }
@@ -74,10 +81,20 @@ public class DBSCAN extends Clustering {
 
     private int dbscan(DataSet data, double eps, int minPts) {
         final int tupc = data.tupleCnt;
-        final double epssq = eps * eps;
+        final int[] neighbors = this._neighbors;
         assert (mapping.length >= tupc);
         assert (tupqueue.length >= tupc);
 
+        // region queries use a grid index for low-dimensional data and a 
+        // KD-tree for moderate dimensions
+        if (GridIndex.applicable(data, eps)) {
+            this._index = new GridIndex(data, eps);
+        } else if (data.attrCnt <= KDTree.MAX_ATTR) {
+            this._index = new KDTree(data);
+        } else {
+            this._index = null;
+        }
+
         int clustercnt = 0;
         for (int i = 0; i < tupc; i++) {
             if (mapping[i] != 0) continue;
@@ -91,13 +108,14 @@ public class DBSCAN extends Clustering {
 
                 // find all neighbors of this point
                 int qneigh = qtop, dupNeighbors = 0;
-                for (int k = 0; k < tupc; k++) {
-                    if (mapping[k] == 0 && data.distSq(j, k) <= epssq) {
+                final int ncnt = regionQuery(data, j, eps, neighbors);
+                for (int n = 0; n < ncnt; n++) {
+                    final int k = neighbors[n];
+                    if (mapping[k] == 0) {
                         // newly reachable neighbor
                         tupqueue[qtop++] = k;
                         mapping[k] = clustercnt;
-                    } else if (mapping[k] == clustercnt
-                            && data.distSq(j, k) <= epssq) {
+                    } else if (mapping[k] == clustercnt) {
                         // previously reached neighbor
                         dupNeighbors++;
                     }
@@ -124,6 +142,25 @@ public class DBSCAN extends Clustering {
         return clustercnt;
     }
 
+    /**
+     * Find all tuples within distance eps of tuple j (including j itself), in
+     * ascending order.
+     */
+    private int regionQuery(DataSet data, int j, double eps, int[] out) {
+        if (_index != null) {
+            int cnt = _index.rangeQuery(j, eps, out);
+            // keep the queue order independent of the index
+            Arrays.sort(out, 0, cnt);
+            return cnt;
+        }
+        final double epssq = eps * eps;
+        int cnt = 0;
+        for (int k = 0; k < data.tupleCnt; k++) {
+            if (data.distSq(j, k) <= epssq) out[cnt++] = k;
+        }
+        return cnt;
+    }
+
     @Override public int tupleCount() {
         return mapping.length;
     }
@@ -136,6 +173,10 @@ public class DBSCAN extends Clustering {
         return mapping[tuple];
     }
 
+    @Override public void labels(int[] out) {
+        System.arraycopy(mapping, 0, out, 0, mapping.length);
+    }
+
     @Override public String toString() {
         return desc;
     }
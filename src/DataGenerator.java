@@ -98,6 +98,10 @@ public class DataGenerator {
             return tupMapping[tuple];
         }
 
+        @Override public void labels(int[] out) {
+            System.arraycopy(tupMapping, 0, out, 0, tupMapping.length);
+        }
+
         @Override public String toString() {
             StringBuilder desc = new StringBuilder("GeneratedData ");
             desc.append(attrc);
@@ -10,7 +10,7 @@ import java.io.PrintStream;
  * There are some convenience methods for calculating distances and extracting
  * attribute values.
  */
-public final class DataSet {
+public final class DataSet implements TupleDistance {
 
     /** The number of tuples in the data set. Strictly non-negative. */
     public final int      tupleCnt;
@@ -34,8 +34,26 @@ public final class DataSet {
      */
     public final double[] flatData;
 
+    /**
+     * Whether distances are calculated with {@link VectorDistance}. This is
+     * decided once at startup: the {@code jdk.incubator.vector} module must be
+     * present (e.g. {@code --add-modules jdk.incubator.vector}), the hardware
+     * must support vectors of at least two doubles, and the system property
+     * {@code dataset.scalar} must not be set to {@code true}.
+     * <p>
+     * The vectorized loops sum in a different order, so distances can differ
+     * from the scalar loops in the last few bits.
+     */
+    public static final boolean VECTORIZED = vectorized();
+
+    /**
+     * Lazily computed norm^2 of each tuple, see {@link #normsSq()}. Volatile,
+     * so a thread never sees the array before its contents.
+     */
+    private volatile double[] normsSq;
+
     public DataSet(int tupleCnt, int attrCnt, double[] flatData) {
-        assert (flatData.length >= tupleCnt * attrCnt);
+        assert (flatData.length >= (long) tupleCnt * attrCnt);
         this.tupleCnt = tupleCnt;
         this.attrCnt = attrCnt;
         this.flatData = flatData;
@@ -55,13 +73,8 @@ public final class DataSet {
      */
     public double distSq(int tupA, int tupB) {
         assert tupA < tupleCnt && tupB < tupleCnt;
-        final int offA = tupA * attrCnt, offB = tupB * attrCnt;
-        double distSq = 0;
-        for (int k = 0; k < attrCnt; k++) {
-            double d = flatData[offA + k] - flatData[offB + k];
-            distSq += d * d;
-        }
-        return distSq;
+        return distSq(flatData, tupA * attrCnt, flatData, tupB * attrCnt,
+                attrCnt);
     }
 
     /**
@@ -82,14 +95,18 @@ public final class DataSet {
      * @param offB The starting offset of the second tuple in its array
      */
     public double distSq(int tupA, double[] dataB, int offB) {
-        assert tupA < tupleCnt && offB < dataB.length - attrCnt;
-        final int offA = tupA * attrCnt;
-        double distSq = 0;
-        for (int k = 0; k < attrCnt; k++) {
-            double d = flatData[offA + k] - dataB[offB + k];
-            distSq += d * d;
-        }
-        return distSq;
+        assert tupA < tupleCnt && offB <= dataB.length - attrCnt;
+        return distSq(flatData, tupA * attrCnt, dataB, offB, attrCnt);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The same as {@link #distSq(int, double[], int)}, for code that also
+     * works on an {@link OffHeapDataSet}.
+     */
+    @Override public double distSq(long tupA, double[] dataB, int offB) {
+        return distSq((int) tupA, dataB, offB);
     }
 
     /**
@@ -114,9 +131,12 @@ public final class DataSet {
      */
     public static double distSq(double[] dataA, int idxA, double[] dataB,
             int idxB, int attrc) {
+        if (VECTORIZED && attrc >= VectorDistance.MIN_ATTR) {
+            return VectorDistance.distSq(dataA, idxA, dataB, idxB, attrc);
+        }
         double distSq = 0;
-        while (--attrc >= 0) {
-            double d = dataA[idxA + attrc] - dataB[idxB + attrc];
+        for (int k = 0; k < attrc; k++) {
+            double d = dataA[idxA + k] - dataB[idxB + k];
             distSq += d * d;
         }
         return distSq;
@@ -133,6 +153,32 @@ public final class DataSet {
         return Math.sqrt(distSq(dataA, idxA, dataB, idxB, attrc));
     }
 
+    /**
+     * Return the norm^2 of each tuple. This is calculated on first use and
+     * cached, since it is needed by {@link BlockedDistance} in every
+     * iteration. Parallel callers should call it once before forking, or
+     * each thread that gets there first may calculate it again.
+     */
+    public double[] normsSq() {
+        double[] n = normsSq;
+        if (n == null) {
+            n = new double[tupleCnt];
+            BlockedDistance.normsSq(flatData, tupleCnt, attrCnt, n);
+            normsSq = n;
+        }
+        return n;
+    }
+
+    private static boolean vectorized() {
+        if (Boolean.getBoolean("dataset.scalar")) return false;
+        // check for the module before touching VectorDistance, which would
+        // otherwise fail to link
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return false;
+        }
+        return VectorDistance.MIN_ATTR >= 2;
+    }
+
     /**
      * Print a multi-line textual representation of the data set.
      */
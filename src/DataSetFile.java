@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary file format for data sets, as a faster and smaller
+ * alternative to the text written by {@link DataSet#print(PrintStream)}.
+ * <p>
+ * A file is a 24 byte header, followed by the flat data array as 64 bit
+ * doubles. The header holds the magic number {@code "DSET"} and the format
+ * version as 32 bit ints, the tuple count as a 64 bit long, the attribute
+ * count as a 32 bit int, and four reserved zero bytes, which keep the data
+ * aligned. Everything is little-endian.
+ * <p>
+ * Version 1 files, with a 16 byte header holding the tuple count as a 32 bit
+ * int, can still be read.
+ */
+public final class DataSetFile {
+
+    /** The first four bytes of every file, {@code "DSET"} */
+    public static final int  MAGIC       = 0x54455344;
+
+    public static final int  VERSION     = 2;
+
+    public static final int  HEADER_SIZE = 24;
+
+    /** Header size of version 1 files */
+    private static final int HEADER_SIZE_V1 = 16;
+
+    /** Size of the buffer used for writing */
+    private static final int CHUNK       = 1 << 16;
+
+    private DataSetFile() {}
+
+    /** Write a data set to a file, replacing it if it exists. */
+    public static void write(DataSet data, Path file) throws IOException {
+        DoubleBuffer values = DoubleBuffer.wrap(data.flatData, 0, data.tupleCnt
+                * data.attrCnt);
+        write(file, data.tupleCnt, data.attrCnt, values);
+    }
+
+    /** Write an off-heap data set to a file, replacing it if it exists. */
+    public static void write(OffHeapDataSet data, Path file)
+            throws IOException {
+        write(file, data.tupleCnt, data.attrCnt, data.chunks());
+    }
+
+    private static void write(Path file, long tupleCnt, int attrCnt,
+            DoubleBuffer... values) throws IOException {
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION);
+            buf.putLong(tupleCnt).putInt(attrCnt).putInt(0);
+            for (DoubleBuffer src : values) {
+                while (src.hasRemaining()) {
+                    final int n = Math.min(buf.remaining() / Double.BYTES,
+                            src.remaining());
+                    DoubleBuffer part = src.slice().limit(n);
+                    buf.asDoubleBuffer().put(part);
+                    src.position(src.position() + n);
+                    buf.position(buf.position() + n * Double.BYTES);
+                    if (buf.remaining() < Double.BYTES) flush(ch, buf);
+                }
+            }
+            flush(ch, buf);
+        }
+    }
+
+    private static void flush(FileChannel ch, ByteBuffer buf)
+            throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Map a file into memory, without copying its contents. The result is
+     * read-only.
+     */
+    public static OffHeapDataSet map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = ch.size();
+            if (size < HEADER_SIZE_V1) {
+                throw new IOException(file + ": not a data set file");
+            }
+            ByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(size, HEADER_SIZE)).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            if (head.getInt() != MAGIC) {
+                throw new IOException(file + ": not a data set file");
+            }
+            final int version = head.getInt();
+            final int headSize;
+            final long tupc;
+            if (version == VERSION && size >= HEADER_SIZE) {
+                headSize = HEADER_SIZE;
+                tupc = head.getLong();
+            } else if (version == 1) {
+                headSize = HEADER_SIZE_V1;
+                tupc = head.getInt();
+            } else {
+                throw new IOException(file + ": unsupported version "
+                        + version);
+            }
+            final int attrc = head.getInt();
+            if (tupc < 0 || attrc <= 0 || tupc > (size - headSize) / attrc
+                    / Double.BYTES || headSize + tupc * attrc * Double.BYTES
+                    != size) {
+                throw new IOException(file + ": corrupt header");
+            }
+
+            // map each chunk separately, as a mapping is limited to 2 GB
+            final int ct = OffHeapDataSet.chunkTuples(attrc);
+            DoubleBuffer[] chunks = new DoubleBuffer[OffHeapDataSet
+                    .chunkCount(tupc, attrc)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long pos = headSize + (long) i * ct * attrc
+                        * Double.BYTES;
+                final long len = Math.min((long) ct * attrc * Double.BYTES,
+                        size - pos);
+                chunks[i] = ch.map(FileChannel.MapMode.READ_ONLY, pos, len)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            return new OffHeapDataSet(tupc, attrc, chunks);
+        }
+    }
+
+    /**
+     * Read a file into a new {@link DataSet}. The file is mapped and its
+     * contents copied onto the heap in bulk, with no parsing. Use
+     * {@link #map(Path)} to access a file without copying it.
+     */
+    public static DataSet read(Path file) throws IOException {
+        return map(file).toDataSet();
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.Random;
+
+/**
+ * K-Means accelerated with Elkan's triangle-inequality bounds.
+ * <p>
+ * Each tuple keeps an upper bound on the distance to its assigned center and
+ * a lower bound on the distance to every other center. After the centers
+ * move, the bounds are loosened by the distance each center moved. A center
+ * is only compared against a tuple when the bounds (or half the distance
+ * between the two centers) cannot rule it out, which skips most distance
+ * calculations once the clustering starts to converge.
+ * <p>
+ * Candidate centers are compared by exact distance^2 and ties go to the lowest
+ * center index, exactly as in {@link KMeans}, so both produce the same
+ * assignments from the same initial centers (up to near-ties on wide data
+ * sets, where {@link KMeans} uses {@link BlockedDistance}). The bounds take
+ * O(n*k) memory.
+ */
+public class ElkanKMeans extends Clustering {
+
+    private final int[]    mapping;
+
+    private final double[] upper;      // per tuple: bound on dist to center
+
+    private final double[] lower;      // per tuple and center: bound on dist
+
+    private final double[] centerDist; // distance between each center pair
+
+    private final double[] halfMin;    // half dist to closest other center
+
+    private final double[] shift;      // distance each center last moved
+
+    private final double[] oldCenters;
+
+    private final double[] newCenters;
+
+    private final int[]    newCounts;
+
+    private final int      clusterCnt;
+
+    private final String   desc;
+
+    public ElkanKMeans(DataSet data, int clusterCnt, double[] centers) {
+        super(data);
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = this.clusterCnt = clusterCnt;
+        assert (centers.length >= clc * attrc);
+        this.desc = String.format("%s(clusterCnt=%d)", getClass()
+                .getSimpleName(), clc);
+
+        final int[] mapping = this.mapping = new int[tupc];
+        final double[] upper = this.upper = new double[tupc];
+        final double[] lower = this.lower = new double[tupc * clc];
+        final double[] centerDist = this.centerDist = new double[clc * clc];
+        final double[] halfMin = this.halfMin = new double[clc];
+        final double[] shift = this.shift = new double[clc];
+        final double[] oldCenters = this.oldCenters = new double[clc * attrc];
+        final double[] newCenters = this.newCenters = new double[clc * attrc];
+        final int[] newCounts = this.newCounts = new int[clc];
+
+        // first pass: compare every tuple to every center
+        boolean changed = false;
+        for (int t = 0; t < tupc; t++) {
+            final int loff = t * clc;
+            double min_d2 = Double.POSITIVE_INFINITY;
+            int min_c = 0;
+            for (int c = 0; c < clc; c++) {
+                double d2 = data.distSq(t, centers, attrc * c);
+                lower[loff + c] = Math.sqrt(d2);
+                if (d2 >= min_d2) continue;
+                min_d2 = d2;
+                min_c = c;
+            }
+            upper[t] = Math.sqrt(min_d2);
+            if (mapping[t] != min_c) {
+                changed = true;
+                mapping[t] = min_c;
+            }
+            accumulate(data, t, min_c);
+        }
+        update(data, centers);
+
+        while (changed) {
+            changed = false;
+
+            // distances between centers
+            for (int c = 0; c < clc; c++) {
+                double min = Double.POSITIVE_INFINITY;
+                for (int o = 0; o < clc; o++) {
+                    if (o == c) continue;
+                    double d = (o < c) ? centerDist[o * clc + c] //
+                            : DataSet.dist(centers, c * attrc, centers, o
+                                    * attrc, attrc);
+                    centerDist[c * clc + o] = d;
+                    if (d < min) min = d;
+                }
+                halfMin[c] = 0.5 * min;
+            }
+
+            for (int t = 0; t < tupc; t++) {
+                final int loff = t * clc;
+                int a = mapping[t];
+                double u = upper[t];
+
+                // no other center can be closer than the assigned one
+                if (u < halfMin[a]) {
+                    accumulate(data, t, a);
+                    continue;
+                }
+
+                boolean tight = false;
+                double a_d2 = 0;
+                for (int c = 0; c < clc; c++) {
+                    if (c == a || u < lower[loff + c]
+                            || u < 0.5 * centerDist[a * clc + c]) continue;
+
+                    // tighten the upper bound, and re-check
+                    if (!tight) {
+                        a_d2 = data.distSq(t, centers, attrc * a);
+                        u = lower[loff + a] = Math.sqrt(a_d2);
+                        tight = true;
+                        if (u < lower[loff + c]
+                                || u < 0.5 * centerDist[a * clc + c]) continue;
+                    }
+
+                    double d2 = data.distSq(t, centers, attrc * c);
+                    double d = lower[loff + c] = Math.sqrt(d2);
+                    if (d2 < a_d2 || (d2 == a_d2 && c < a)) {
+                        a = c;
+                        a_d2 = d2;
+                        u = d;
+                    }
+                }
+                upper[t] = u;
+                if (mapping[t] != a) {
+                    changed = true;
+                    mapping[t] = a;
+                }
+                accumulate(data, t, a);
+            }
+            update(data, centers);
+        }
+    }
+
+    public ElkanKMeans(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, KMeans.initCenters(data, clusterCnt, rand));
+    }
+
+    /** Add a tuple to the new center of its cluster */
+    private void accumulate(DataSet data, int t, int c) {
+        final int attrc = data.attrCnt, off = c * attrc;
+        for (int k = 0; k < attrc; k++) {
+            newCenters[off + k] += data.getAttr(t, k);
+        }
+        newCounts[c]++;
+    }
+
+    /** Move the centers, and loosen the bounds by the distance moved */
+    private void update(DataSet data, double[] centers) {
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = clusterCnt;
+        System.arraycopy(centers, 0, oldCenters, 0, clc * attrc);
+        KMeans.moveCenters(centers, newCenters, newCounts, clc, attrc);
+        for (int c = 0; c < clc; c++) {
+            shift[c] = DataSet.dist(oldCenters, c * attrc, centers, c * attrc,
+                    attrc);
+        }
+        for (int t = 0; t < tupc; t++) {
+            final int loff = t * clc;
+            upper[t] += shift[mapping[t]];
+            for (int c = 0; c < clc; c++) {
+                lower[loff + c] = Math.max(0, lower[loff + c] - shift[c]);
+            }
+        }
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Random;
+
+/**
+ * {@link KMeans} over a single-precision {@link FloatDataSet}.
+ * <p>
+ * Distances are calculated in single precision, which is where the time goes.
+ * The new centers can be summed in either precision: summing thousands of
+ * tuples in single precision loses digits, so the centers can drift from the
+ * true means, while summing in double precision costs one extra array of
+ * {@code k * attrCnt} doubles.
+ */
+public class FloatKMeans extends Clustering {
+
+    private final int[]    mapping;
+
+    private final float[]  newCentersF;  // center sums, in single precision
+
+    private final double[] newCentersD;  // center sums, in double precision
+
+    private final int[]    newCounts;
+
+    private final int      clusterCnt;
+
+    private final String   desc;
+
+    /**
+     * @param centers The initial centers, updated in place
+     * @param doubleSums Whether to sum the new centers in double precision
+     */
+    public FloatKMeans(FloatDataSet data, int clusterCnt, float[] centers,
+            boolean doubleSums) {
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        assert (centers.length >= clusterCnt * attrc);
+        this.desc = String.format("%s(clusterCnt=%d, doubleSums=%b)",
+                getClass().getSimpleName(), clusterCnt, doubleSums);
+
+        this.clusterCnt = clusterCnt;
+        final int[] mapping = this.mapping = new int[tupc];
+        this.newCentersF = doubleSums ? null : new float[clusterCnt * attrc];
+        this.newCentersD = doubleSums ? new double[clusterCnt * attrc] : null;
+        final int[] newCounts = this.newCounts = new int[clusterCnt];
+        for (boolean changed = true; changed;) {
+            changed = false;
+            for (int t = 0; t < tupc; t++) {
+                // find closest center
+                float min_d2 = Float.POSITIVE_INFINITY;
+                int min_c = 0;
+                for (int c = 0; c < clusterCnt; c++) {
+                    float d2 = data.distSq(t, centers, attrc * c);
+                    if (d2 >= min_d2) continue;
+                    min_d2 = d2;
+                    min_c = c;
+                }
+                if (mapping[t] != min_c) {
+                    changed = true;
+                    mapping[t] = min_c;
+                }
+
+                // add to new center
+                final int off = min_c * attrc;
+                if (doubleSums) {
+                    for (int k = 0; k < attrc; k++) {
+                        newCentersD[off + k] += data.getAttr(t, k);
+                    }
+                } else {
+                    for (int k = 0; k < attrc; k++) {
+                        newCentersF[off + k] += data.getAttr(t, k);
+                    }
+                }
+                newCounts[min_c]++;
+            }
+
+            // calculate new cluster centers
+            moveCenters(centers, attrc);
+        }
+    }
+
+    public FloatKMeans(FloatDataSet data, int clusterCnt, Random rand,
+            boolean doubleSums) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand), doubleSums);
+    }
+
+    /**
+     * Replace each center by the mean of its tuples, and reset the sums.
+     * 
+     * @see KMeans#moveCenters(double[], double[], int[], int, int)
+     */
+    private void moveCenters(float[] centers, int attrc) {
+        for (int c = 0; c < clusterCnt; c++) {
+            final int off = c * attrc, n = newCounts[c];
+            for (int k = 0; k < attrc; k++) {
+                final double sum;
+                if (newCentersD != null) {
+                    sum = newCentersD[off + k];
+                    newCentersD[off + k] = 0;
+                } else {
+                    sum = newCentersF[off + k];
+                    newCentersF[off + k] = 0;
+                }
+                if (n > 0) centers[off + k] = (float) (sum / n);
+            }
+            newCounts[c] = 0;
+        }
+    }
+
+    /** Find random starting points for clusters */
+    public static float[] initCenters(FloatDataSet data, int clCnt,
+            Random rand) {
+        final int attrc = data.attrCnt;
+        float[] centers = new float[attrc * clCnt];
+        for (int c = 0; c < clCnt; c++) {
+            int t = rand.nextInt(data.tupleCnt);
+            System.arraycopy(data.flatData, t * attrc, centers, c * attrc,
+                    attrc);
+        }
+        return centers;
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
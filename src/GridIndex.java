@@ -0,0 +1,229 @@
+import java.util.Arrays;
+
+/**
+ * A uniform grid over a data set, used to answer fixed-radius neighbor
+ * queries without scanning every tuple.
+ * <p>
+ * Space is divided into hypercubes with side length {@code cellSize}. All
+ * tuples within distance {@code cellSize} of a query tuple must lie in the
+ * query's own cell or one of its immediate neighbors, so a query only has to
+ * visit {@code 3^attrCnt} cells. This is only worthwhile for a small number of
+ * attributes (see {@link #MAX_ATTR}).
+ * <p>
+ * Occupied cells are stored in an open-addressing hash table keyed by their
+ * (mixed-radix) cell coordinate, and the tuples of each cell are stored
+ * contiguously in a single permutation array. No objects are allocated per
+ * cell or per tuple, and queries do not allocate at all.
+ * <p>
+ * Queries reuse internal scratch space, so an index must not be queried from
+ * multiple threads at once.
+ */
+public final class GridIndex implements RangeIndex {
+
+    /** The largest attribute count for which a grid is worthwhile. */
+    public static final int MAX_ATTR = 4;
+
+    private final DataSet   data;
+
+    private final double    cellSize;
+
+    private final double[]  origin;     // lower corner of the grid
+
+    private final long[]    dims;       // number of cells along each attribute
+
+    private final long[]    strides;    // key stride of each attribute
+
+    private final long[]    cellKeys;   // hash table: key of each slot, or -1
+
+    private final int[]     cellStart;  // hash table: offset into tuples
+
+    private final int[]     tuples;     // tuple indices, grouped by cell
+
+    private final int[]     _tupSlot;   // build scratch: slot of each tuple
+
+    private final int[]     _fill;      // build scratch: next free position
+
+    private final long[]    _coords;    // query scratch: cell coordinate
+
+    private final int[]     _offsets;   // query scratch: neighbor offset
+
+    /**
+     * Check whether a grid can be built for the given data set and cell size.
+     * This requires a small attribute count, and few enough cells along each
+     * attribute that every cell has a unique {@code long} key.
+     */
+    public static boolean applicable(DataSet data, double cellSize) {
+        final int attrc = data.attrCnt;
+        if (attrc > MAX_ATTR || !(cellSize > 0)) return false;
+        double[] min = new double[attrc], max = new double[attrc];
+        bounds(data, min, max);
+        double cells = 1;
+        for (int k = 0; k < attrc; k++) {
+            cells *= Math.floor((max[k] - min[k]) / cellSize) + 1;
+        }
+        return cells < (double) (1L << 62);
+    }
+
+    /**
+     * Build a grid over a data set.
+     *
+     * @param data The data set to index
+     * @param cellSize The side length of each cell. Queries can use any radius
+     *            up to this size.
+     * @see #applicable(DataSet, double)
+     */
+    public GridIndex(DataSet data, double cellSize) {
+        if (!applicable(data, cellSize))
+            throw new IllegalArgumentException("Data set is too wide for a "
+                    + "grid with cell size " + cellSize);
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        this.data = data;
+        this.cellSize = cellSize;
+        this.origin = new double[attrc];
+        this.dims = new long[attrc];
+        this.strides = new long[attrc];
+        this._coords = new long[attrc];
+        this._offsets = new int[attrc];
+
+        double[] max = new double[attrc];
+        bounds(data, origin, max);
+        long stride = 1;
+        for (int k = 0; k < attrc; k++) {
+            dims[k] = (long) Math.floor((max[k] - origin[k]) / cellSize) + 1;
+            strides[k] = stride;
+            stride *= dims[k];
+        }
+
+        // hash table with a load factor of at most 1/2: more than 2 * tupc
+        // slots, since highestOneBit(tupc) > tupc / 2
+        int slots = Integer.highestOneBit(Math.max(tupc, 1)) << 2;
+        this.cellKeys = new long[slots];
+        this.cellStart = new int[slots + 1];
+        Arrays.fill(cellKeys, -1);
+
+        // count the tuples in each cell
+        final int[] tupSlot = this._tupSlot = new int[tupc];
+        for (int t = 0; t < tupc; t++) {
+            int s = tupSlot[t] = insert(cellKey(t));
+            cellStart[s + 1]++;
+        }
+
+        // lay the cells out sequentially, in slot order
+        for (int s = 0; s < slots; s++) {
+            cellStart[s + 1] += cellStart[s];
+        }
+        final int[] fill = this._fill = Arrays.copyOf(cellStart, slots);
+        this.tuples = new int[tupc];
+        for (int t = 0; t < tupc; t++) {
+            tuples[fill[tupSlot[t]]++] = t;
+        }
+    }
+
+    /** Return the largest query radius supported by this grid. */
+    public double cellSize() {
+        return cellSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The query radius must be at most {@link #cellSize()}.
+     */
+    @Override public int rangeQuery(int tup, double eps, int[] out) {
+        assert eps <= cellSize;
+        final int attrc = data.attrCnt;
+        final double epssq = eps * eps;
+        final long[] coords = this._coords;
+        final int[] offs = this._offsets;
+        final int toff = tup * attrc;
+        for (int k = 0; k < attrc; k++) {
+            coords[k] = coord(data.flatData[toff + k], k);
+            offs[k] = -1;
+        }
+
+        // visit all 3^attrc neighboring cells, odometer-style
+        int cnt = 0;
+        while (true) {
+            long key = 0;
+            boolean inside = true;
+            for (int k = 0; inside && k < attrc; k++) {
+                long c = coords[k] + offs[k];
+                inside = c >= 0 && c < dims[k];
+                key += c * strides[k];
+            }
+            int s = inside ? find(key) : -1;
+            if (s >= 0) {
+                final int end = cellStart[s + 1];
+                for (int i = cellStart[s]; i < end; i++) {
+                    int q = tuples[i];
+                    if (data.distSq(tup, q) <= epssq) out[cnt++] = q;
+                }
+            }
+
+            int k = 0;
+            while (k < attrc && offs[k] == 1) {
+                offs[k++] = -1;
+            }
+            if (k == attrc) break;
+            offs[k]++;
+        }
+        return cnt;
+    }
+
+    private long coord(double x, int attr) {
+        long c = (long) Math.floor((x - origin[attr]) / cellSize);
+        return Math.min(Math.max(c, 0), dims[attr] - 1);
+    }
+
+    private long cellKey(int tup) {
+        final int attrc = data.attrCnt, toff = tup * attrc;
+        long key = 0;
+        for (int k = 0; k < attrc; k++) {
+            key += coord(data.flatData[toff + k], k) * strides[k];
+        }
+        return key;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (cellKeys.length - 1);
+    }
+
+    /** Find or create the hash slot of a cell */
+    private int insert(long key) {
+        int s = slot(key);
+        while (cellKeys[s] != key && cellKeys[s] != -1) {
+            s = (s + 1) & (cellKeys.length - 1);
+        }
+        cellKeys[s] = key;
+        return s;
+    }
+
+    /** Find the hash slot of a cell, or -1 if the cell is empty */
+    private int find(long key) {
+        int s = slot(key);
+        while (cellKeys[s] != key) {
+            if (cellKeys[s] == -1) return -1;
+            s = (s + 1) & (cellKeys.length - 1);
+        }
+        return s;
+    }
+
+    /** Calculate the bounding box of a data set */
+    private static void bounds(DataSet data, double[] min, double[] max) {
+        final int attrc = data.attrCnt;
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int t = 0, toff = 0; t < data.tupleCnt; t++, toff += attrc) {
+            for (int k = 0; k < attrc; k++) {
+                double x = data.flatData[toff + k];
+                if (x < min[k]) min[k] = x;
+                if (x > max[k]) max[k] = x;
+            }
+        }
+        if (data.tupleCnt == 0) {
+            Arrays.fill(min, 0);
+            Arrays.fill(max, 0);
+        }
+    }
+}
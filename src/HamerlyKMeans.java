@@ -0,0 +1,193 @@
+import java.util.Random;
+
+/**
+ * K-Means accelerated with Hamerly's bounds.
+ * <p>
+ * Like {@link ElkanKMeans} this skips distance calculations using the
+ * triangle inequality, but each tuple only keeps two bounds: an upper bound on
+ * the distance to its assigned center, and a single lower bound on the
+ * distance to its second-closest center. This needs O(n) extra memory instead
+ * of O(n*k), at the cost of pruning less when the clustering is far from
+ * converged. When the bounds fail, the tuple is compared to all centers.
+ * <p>
+ * Candidate centers are compared by exact distance^2 and ties go to the lowest
+ * center index, exactly as in {@link KMeans}, so both produce the same
+ * assignments from the same initial centers (up to near-ties on wide data
+ * sets, where {@link KMeans} uses {@link BlockedDistance}).
+ */
+public class HamerlyKMeans extends Clustering {
+
+    private final int[]    mapping;
+
+    private final double[] upper;      // per tuple: bound on dist to center
+
+    private final double[] lower;      // per tuple: bound on 2nd closest dist
+
+    private final double[] halfMin;    // half dist to closest other center
+
+    private final double[] shift;      // distance each center last moved
+
+    private final double[] oldCenters;
+
+    private final double[] newCenters;
+
+    private final int[]    newCounts;
+
+    private final int      clusterCnt;
+
+    private final String   desc;
+
+    public HamerlyKMeans(DataSet data, int clusterCnt, double[] centers) {
+        super(data);
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = this.clusterCnt = clusterCnt;
+        assert (centers.length >= clc * attrc);
+        this.desc = String.format("%s(clusterCnt=%d)", getClass()
+                .getSimpleName(), clc);
+
+        final int[] mapping = this.mapping = new int[tupc];
+        final double[] upper = this.upper = new double[tupc];
+        this.lower = new double[tupc];
+        final double[] halfMin = this.halfMin = new double[clc];
+        this.shift = new double[clc];
+        this.oldCenters = new double[clc * attrc];
+        this.newCenters = new double[clc * attrc];
+        this.newCounts = new int[clc];
+
+        // first pass: compare every tuple to every center
+        boolean changed = false;
+        for (int t = 0; t < tupc; t++) {
+            changed |= assign(data, t, centers);
+        }
+        update(data, centers);
+
+        while (changed) {
+            changed = false;
+
+            // half the distance from each center to its closest neighbor
+            for (int c = 0; c < clc; c++) {
+                double min = Double.POSITIVE_INFINITY;
+                for (int o = 0; o < clc; o++) {
+                    if (o == c) continue;
+                    double d2 = DataSet.distSq(centers, c * attrc, centers, o
+                            * attrc, attrc);
+                    if (d2 < min) min = d2;
+                }
+                halfMin[c] = 0.5 * Math.sqrt(min);
+            }
+
+            for (int t = 0; t < tupc; t++) {
+                final int a = mapping[t];
+                final double bound = Math.max(halfMin[a], lower[t]);
+
+                // no other center can be closer than the assigned one
+                if (upper[t] < bound) {
+                    accumulate(data, t, a);
+                    continue;
+                }
+
+                // tighten the upper bound, and re-check
+                upper[t] = data.dist(t, centers, attrc * a);
+                if (upper[t] < bound) {
+                    accumulate(data, t, a);
+                    continue;
+                }
+
+                changed |= assign(data, t, centers);
+            }
+            update(data, centers);
+        }
+    }
+
+    public HamerlyKMeans(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, KMeans.initCenters(data, clusterCnt, rand));
+    }
+
+    /**
+     * Compare a tuple to all centers, reset its bounds, and add it to the new
+     * center of its cluster.
+     *
+     * @return Whether the tuple changed clusters
+     */
+    private boolean assign(DataSet data, int t, double[] centers) {
+        final int attrc = data.attrCnt;
+        double min_d2 = Double.POSITIVE_INFINITY;
+        double second_d2 = Double.POSITIVE_INFINITY;
+        int min_c = 0;
+        for (int c = 0; c < clusterCnt; c++) {
+            double d2 = data.distSq(t, centers, attrc * c);
+            if (d2 >= min_d2) {
+                if (d2 < second_d2) second_d2 = d2;
+                continue;
+            }
+            second_d2 = min_d2;
+            min_d2 = d2;
+            min_c = c;
+        }
+        upper[t] = Math.sqrt(min_d2);
+        lower[t] = Math.sqrt(second_d2);
+        accumulate(data, t, min_c);
+        if (mapping[t] == min_c) return false;
+        mapping[t] = min_c;
+        return true;
+    }
+
+    /** Add a tuple to the new center of its cluster */
+    private void accumulate(DataSet data, int t, int c) {
+        final int attrc = data.attrCnt, off = c * attrc;
+        for (int k = 0; k < attrc; k++) {
+            newCenters[off + k] += data.getAttr(t, k);
+        }
+        newCounts[c]++;
+    }
+
+    /** Move the centers, and loosen the bounds by the distance moved */
+    private void update(DataSet data, double[] centers) {
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = clusterCnt;
+        System.arraycopy(centers, 0, oldCenters, 0, clc * attrc);
+        KMeans.moveCenters(centers, newCenters, newCounts, clc, attrc);
+
+        // the lower bound loosens by the largest move of any other center
+        int maxc = 0;
+        double max = 0, second = 0;
+        for (int c = 0; c < clc; c++) {
+            double s = shift[c] = DataSet.dist(oldCenters, c * attrc,
+                    centers, c * attrc, attrc);
+            if (s > max) {
+                second = max;
+                max = s;
+                maxc = c;
+            } else if (s > second) {
+                second = s;
+            }
+        }
+        for (int t = 0; t < tupc; t++) {
+            final int a = mapping[t];
+            upper[t] += shift[a];
+            lower[t] -= (a == maxc) ? second : max;
+        }
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * A balanced KD-tree over a data set, answering range and k-nearest-neighbor
+ * queries.
+ * <p>
+ * The tree is implicit: it is stored as a single permutation of the tuple
+ * indices, where every subtree occupies a contiguous range {@code [lo, hi)}.
+ * The median tuple {@code perm[mid]} with {@code mid = (lo + hi) / 2} is the
+ * splitting point of the subtree, all tuples in {@code [lo, mid)} lie at or
+ * below it along the split attribute and all tuples in {@code (mid, hi)} lie at
+ * or above it. Small ranges are leaves and are scanned linearly. Apart from
+ * the permutation, only the split attribute of each node is stored, and
+ * coordinates are read directly from {@link DataSet#flatData}.
+ * <p>
+ * Queries reuse internal scratch space and never allocate, so an index must
+ * not be queried from multiple threads at once.
+ */
+public final class KDTree implements RangeIndex {
+
+    /**
+     * The largest attribute count for which a KD-tree is worthwhile. Beyond
+     * this, queries visit most of the tree anyway.
+     */
+    public static final int MAX_ATTR  = 8;
+
+    /** Subtrees with at most this many tuples are scanned linearly */
+    private static final int LEAF_SIZE = 8;
+
+    private final DataSet    data;
+
+    private final int[]      perm;      // tuple indices, in tree order
+
+    private final int[]      splitAttr; // split attribute, indexed by mid
+
+    private final int[]      _stack;    // query scratch: pending (lo, hi)
+
+    private final double[]   _bounds;   // query scratch: pending lower bounds
+
+    /** Build a tree over a data set. */
+    public KDTree(DataSet data) {
+        final int tupc = data.tupleCnt;
+        this.data = data;
+        this.perm = new int[tupc];
+        this.splitAttr = new int[tupc];
+        for (int t = 0; t < tupc; t++) {
+            perm[t] = t;
+        }
+        build(0, tupc);
+
+        // one pending sibling per level, plus the two children of a node
+        int depth = 2;
+        for (int n = tupc; n > LEAF_SIZE; n >>>= 1) {
+            depth++;
+        }
+        this._stack = new int[2 * depth];
+        this._bounds = new double[depth];
+    }
+
+    @Override public int rangeQuery(int tup, double eps, int[] out) {
+        return rangeQuery(data.flatData, tup * data.attrCnt, eps, out);
+    }
+
+    /**
+     * Find all tuples within a given distance of an arbitrary point.
+     *
+     * @param pt An array containing the query point
+     * @param off The starting offset of the query point in its array
+     * @param eps The query radius
+     * @param out Receives the indices of all neighbors, in no particular
+     *            order. Must be large enough to hold every tuple in the data
+     *            set.
+     * @return The number of neighbors written to {@code out}
+     */
+    public int rangeQuery(double[] pt, int off, double eps, int[] out) {
+        final int attrc = data.attrCnt;
+        final double[] flat = data.flatData;
+        final double epssq = eps * eps;
+        final int[] stack = this._stack;
+        int cnt = 0, sp = 0;
+        stack[sp++] = 0;
+        stack[sp++] = perm.length;
+        while (sp > 0) {
+            final int hi = stack[--sp], lo = stack[--sp];
+            if (hi - lo <= LEAF_SIZE) {
+                for (int i = lo; i < hi; i++) {
+                    int q = perm[i];
+                    if (data.distSq(q, pt, off) <= epssq) out[cnt++] = q;
+                }
+                continue;
+            }
+            final int mid = (lo + hi) >>> 1, q = perm[mid];
+            if (data.distSq(q, pt, off) <= epssq) out[cnt++] = q;
+            final int a = splitAttr[mid];
+            final double diff = pt[off + a] - flat[q * attrc + a];
+            if (diff <= eps) {
+                stack[sp++] = lo;
+                stack[sp++] = mid;
+            }
+            if (diff >= -eps) {
+                stack[sp++] = mid + 1;
+                stack[sp++] = hi;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * Find the k nearest neighbors of a tuple. The tuple itself is included,
+     * at distance zero.
+     *
+     * @see #knnQuery(double[], int, int, int[], double[])
+     */
+    public int knnQuery(int tup, int k, int[] outIdx, double[] outDistSq) {
+        return knnQuery(data.flatData, tup * data.attrCnt, k, outIdx,
+                outDistSq);
+    }
+
+    /**
+     * Find the k nearest neighbors of an arbitrary point.
+     *
+     * @param pt An array containing the query point
+     * @param off The starting offset of the query point in its array
+     * @param k The number of neighbors to find
+     * @param outIdx Receives the indices of the neighbors, nearest first. Must
+     *            have room for at least k elements.
+     * @param outDistSq Receives the distance^2 of each neighbor. Must have room
+     *            for at least k elements.
+     * @return The number of neighbors found, {@code min(k, tupleCnt)}
+     */
+    public int knnQuery(double[] pt, int off, int k, int[] outIdx,
+            double[] outDistSq) {
+        final int attrc = data.attrCnt;
+        final double[] flat = data.flatData;
+        final int[] stack = this._stack;
+        final double[] bounds = this._bounds;
+        int cnt = 0, sp = 0;
+        stack[sp++] = 0;
+        stack[sp++] = perm.length;
+        bounds[0] = 0;
+        while (sp > 0) {
+            final double bound = bounds[(sp >>> 1) - 1];
+            final int hi = stack[--sp], lo = stack[--sp];
+            if (cnt == k && bound > outDistSq[k - 1]) continue;
+
+            if (hi - lo <= LEAF_SIZE) {
+                for (int i = lo; i < hi; i++) {
+                    cnt = insert(perm[i], data.distSq(perm[i], pt, off), k,
+                            cnt, outIdx, outDistSq);
+                }
+                continue;
+            }
+            final int mid = (lo + hi) >>> 1, q = perm[mid];
+            cnt = insert(q, data.distSq(q, pt, off), k, cnt, outIdx, outDistSq);
+
+            // push the far child first, so the near child is searched first
+            final int a = splitAttr[mid];
+            final double diff = pt[off + a] - flat[q * attrc + a];
+            final double farBound = Math.max(bound, diff * diff);
+            if (diff <= 0) {
+                bounds[sp >>> 1] = farBound;
+                stack[sp++] = mid + 1;
+                stack[sp++] = hi;
+                bounds[sp >>> 1] = bound;
+                stack[sp++] = lo;
+                stack[sp++] = mid;
+            } else {
+                bounds[sp >>> 1] = farBound;
+                stack[sp++] = lo;
+                stack[sp++] = mid;
+                bounds[sp >>> 1] = bound;
+                stack[sp++] = mid + 1;
+                stack[sp++] = hi;
+            }
+        }
+        return cnt;
+    }
+
+    /** Insert a candidate into a sorted list of at most k neighbors */
+    private static int insert(int q, double d2, int k, int cnt, int[] idx,
+            double[] dist) {
+        if (cnt == k && d2 >= dist[k - 1]) return cnt;
+        int i = cnt < k ? cnt++ : k - 1;
+        for (; i > 0 && dist[i - 1] > d2; i--) {
+            idx[i] = idx[i - 1];
+            dist[i] = dist[i - 1];
+        }
+        idx[i] = q;
+        dist[i] = d2;
+        return cnt;
+    }
+
+    /** Recursively arrange perm[lo, hi) into a subtree */
+    private void build(int lo, int hi) {
+        if (hi - lo <= LEAF_SIZE) return;
+        final int attrc = data.attrCnt;
+        final double[] flat = data.flatData;
+
+        // split along the attribute with the widest spread
+        int a = 0;
+        double widest = -1;
+        for (int k = 0; k < attrc; k++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double x = flat[perm[i] * attrc + k];
+                if (x < min) min = x;
+                if (x > max) max = x;
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                a = k;
+            }
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, a);
+        splitAttr[mid] = a;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /**
+     * Partially sort perm[lo, hi] along attribute a, so that perm[n] is in its
+     * sorted position (quickselect).
+     */
+    private void select(int lo, int hi, int n, int a) {
+        final int attrc = data.attrCnt;
+        final double[] flat = data.flatData;
+        while (hi > lo) {
+            final double pivot = flat[perm[(lo + hi) >>> 1] * attrc + a];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (flat[perm[i] * attrc + a] < pivot) i++;
+                while (flat[perm[j] * attrc + a] > pivot) j--;
+                if (i <= j) {
+                    int t = perm[i];
+                    perm[i++] = perm[j];
+                    perm[j--] = t;
+                }
+            }
+            if (n <= j) hi = j;
+            else if (n >= i) lo = i;
+            else return;
+        }
+    }
+}
@@ -1,65 +1,320 @@
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * K-Means (Lloyd's algorithm): assign every tuple to its closest center, move
+ * each center to the mean of its tuples, and repeat until no tuple changes
+ * clusters.
+ * <p>
+ * A cluster that loses all of its tuples keeps its previous center, see
+ * {@link #moveCenters}. Originally such a center became NaN (0 / 0), so the
+ * cluster stayed empty for good, and its NaN center went into the output.
+ * <p>
+ * The parallel mode gives the same result for any number of threads, but
+ * <b>not</b> bit for bit the same as the sequential mode ({@code pool ==
+ * null}). It sums large clusters in chunks, which rounds differently, so the
+ * labels of the two modes can differ on near-ties, see
+ * {@link #KMeans(DataSet, int, double[], ForkJoinPool)}.
+ */
 public class KMeans extends Clustering {
 
+    /** Number of tuples of one cluster summed by each parallel task */
+    private static final int SUM_CHUNK = 4096;
+
     private final int[]    mapping;
 
     private final double[] newCenters;
 
     private final int[]    newCounts;
 
+    private final int[]    _order;     // tuple indices, grouped by cluster
+
+    private final int[]    _starts;    // start of each cluster in _order
+
+    private final int[]    _shareCounts; // per worker and cluster: tuples
+
+    private final int[]    _chunkCluster; // cluster of each summed chunk
+
+    private final int[]    _chunkStart;   // start of each chunk in _order
+
+    private final double[] _chunkSums;    // sum of each chunk
+
+    private final double[] _centerNorms; // for the blocked distance kernel
+
+    private final double[][] _blocks;    // per worker: blocked distances
+
     private final int      clusterCnt;
 
     private final String   desc;
 
     public KMeans(DataSet data, int clusterCnt, double[] centers) {
+        this(data, clusterCnt, centers, null);
+    }
+
+    /**
+     * Run K-Means, optionally assigning tuples to clusters in parallel.
+     * <p>
+     * In parallel mode each worker assigns a fixed share of the tuples with
+     * its own scratch buffers. The tuples are then grouped by cluster in
+     * ascending order, and each cluster's new center is summed in chunks of
+     * {@value #SUM_CHUNK} tuples that are added up left to right. The result
+     * is therefore identical for any number of threads. It also matches the
+     * sequential pass, except for rounding in the centers of clusters larger
+     * than one chunk.
+     *
+     * @param pool The pool to run in, or {@code null} to run sequentially
+     */
+    public KMeans(DataSet data, int clusterCnt, double[] centers,
+            ForkJoinPool pool) {
         super(data);
         final int attrc = data.attrCnt, tupc = data.tupleCnt;
         assert (centers.length >= clusterCnt * attrc);
-        this.desc = String.format("%s(clusterCnt=%d)", getClass()
-                .getSimpleName(), clusterCnt);
+        this.desc = pool == null ? String.format("%s(clusterCnt=%d)",
+                getClass().getSimpleName(), clusterCnt) : String.format(
+                "%s(clusterCnt=%d, threads=%d)", getClass().getSimpleName(),
+                clusterCnt, pool.getParallelism());
 
         this.clusterCnt = clusterCnt;
         this.mapping = new int[tupc];
         this.newCenters = new double[clusterCnt * attrc];
         this.newCounts = new int[clusterCnt];
+        final int workers = pool == null ? 1 : pool.getParallelism();
+        final int maxChunks = tupc / SUM_CHUNK + clusterCnt;
+        this._order = pool == null ? null : new int[tupc];
+        this._starts = pool == null ? null : new int[clusterCnt + 1];
+        this._shareCounts = pool == null ? null
+                : new int[workers * clusterCnt];
+        this._chunkCluster = pool == null ? null : new int[maxChunks];
+        this._chunkStart = pool == null ? null : new int[maxChunks];
+        this._chunkSums = pool == null ? null : new double[maxChunks * attrc];
+        final boolean blocked = attrc >= BlockedDistance.MIN_ATTR;
+        this._centerNorms = blocked ? new double[clusterCnt] : null;
+        this._blocks = blocked ? new double[workers][BlockedDistance.TUPLE_BLOCK
+                * clusterCnt] : null;
+        if (blocked) data.normsSq(); // before the workers need it
         for (boolean changed = true; changed;) {
-            changed = false;
-
-            // assign tuples to clusters and calculate new centers
-            for (int t = 0; t < tupc; t++) {
-                double min_d2 = Double.POSITIVE_INFINITY;
-                int min_c = 0;
-                for (int c = 0; c < clusterCnt; c++) {
-                    double d2 = data.distSq(t, centers, attrc * c);
-                    if (d2 >= min_d2) continue;
-                    min_d2 = d2;
-                    min_c = c;
-                }
-                if (mapping[t] != min_c) {
-                    changed = true;
-                    mapping[t] = min_c;
+            if (blocked) {
+                BlockedDistance.normsSq(centers, clusterCnt, attrc,
+                        _centerNorms);
+            }
+            if (pool == null) {
+                changed = assign(data, centers, 0, tupc, blocked ? _blocks[0]
+                        : null, true);
+            } else {
+                changed = Parallel.reduce(pool, 0, workers, 1, (w, end) -> {
+                    return assignShare(data, centers, w, workers);
+                }, Boolean::logicalOr);
+                sumParallel(data, pool, workers);
+            }
+
+            // calculate new cluster centers
+            moveCenters(centers, newCenters, newCounts, clusterCnt, attrc);
+        }
+    }
+
+    public KMeans(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand));
+    }
+
+    public KMeans(DataSet data, int clusterCnt, Random rand,
+            ForkJoinPool pool) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand), pool);
+    }
+
+    /**
+     * Assign the tuples in [lo, hi) to their closest center, and optionally
+     * add them to the new centers. Wide data sets use the blocked distance
+     * kernel.
+     *
+     * @param block Scratch space for the blocked kernel, or {@code null} to
+     *            compare tuples to centers one by one
+     * @return Whether any tuple changed clusters
+     */
+    private boolean assign(DataSet data, double[] centers, int lo, int hi,
+            double[] block, boolean accumulate) {
+        final int attrc = data.attrCnt, clc = clusterCnt;
+        boolean changed = false;
+        for (int t = lo; t < hi; t++) {
+            int min_c;
+            if (block == null) {
+                min_c = nearestCenter(data, t, centers, clc);
+            } else {
+                final int b = (t - lo) % BlockedDistance.TUPLE_BLOCK;
+                if (b == 0) {
+                    int end = Math.min(t + BlockedDistance.TUPLE_BLOCK, hi);
+                    BlockedDistance.distSq(data, t, end, centers,
+                            _centerNorms, clc, block);
                 }
-                for (int k = 0; k < attrc; k++) {
-                    newCenters[min_c * attrc + k] += data.getAttr(t, k);
+                min_c = argmin(block, b * clc, clc);
+                if (nearTie(data, t, block, b * clc, min_c)) {
+                    min_c = nearestCenter(data, t, centers, clc);
                 }
-                newCounts[min_c]++;
             }
+            if (mapping[t] != min_c) {
+                changed = true;
+                mapping[t] = min_c;
+            }
+            if (!accumulate) continue;
+            for (int k = 0; k < attrc; k++) {
+                newCenters[min_c * attrc + k] += data.getAttr(t, k);
+            }
+            newCounts[min_c]++;
+        }
+        return changed;
+    }
 
-            // calculate new cluster centers
-            for (int c = 0; c < clusterCnt; c++) {
-                final int off = c * attrc;
-                for (int k = 0; k < attrc; k++) {
-                    centers[off + k] = newCenters[off + k] / newCounts[c];
-                    newCenters[off + k] = 0;
+    /**
+     * Assign one worker's share of the tuples in a parallel pass, and count
+     * its tuples in each cluster.
+     *
+     * @return Whether any tuple changed clusters
+     */
+    private boolean assignShare(DataSet data, double[] centers, int w,
+            int workers) {
+        final int clc = clusterCnt, lo = share(data, w, workers);
+        final int hi = share(data, w + 1, workers);
+        boolean changed = assign(data, centers, lo, hi, _blocks == null ? null
+                : _blocks[w], false);
+        final int[] counts = this._shareCounts;
+        Arrays.fill(counts, w * clc, (w + 1) * clc, 0);
+        for (int t = lo; t < hi; t++) {
+            counts[w * clc + mapping[t]]++;
+        }
+        return changed;
+    }
+
+    /** Return the first tuple of a worker's share */
+    private static int share(DataSet data, int w, int workers) {
+        return (int) ((long) data.tupleCnt * w / workers);
+    }
+
+    /**
+     * Sum the new centers in parallel over chunks of each cluster, after a
+     * parallel assignment pass.
+     */
+    private void sumParallel(DataSet data, ForkJoinPool pool, int workers) {
+        final int attrc = data.attrCnt, clc = clusterCnt;
+        final int[] order = this._order, starts = this._starts;
+        final int[] counts = this._shareCounts;
+
+        // group tuples by cluster, keeping ascending order within each: each
+        // worker's share goes after the shares of the workers before it
+        int pos = 0;
+        for (int c = 0; c < clc; c++) {
+            starts[c] = pos;
+            for (int w = 0; w < workers; w++) {
+                final int n = counts[w * clc + c];
+                counts[w * clc + c] = pos;
+                pos += n;
+            }
+            newCounts[c] = pos - starts[c];
+        }
+        starts[clc] = pos;
+        Parallel.forRange(pool, 0, workers, 1, (w, end) -> {
+            final int hi = share(data, w + 1, workers);
+            for (int t = share(data, w, workers); t < hi; t++) {
+                order[counts[w * clc + mapping[t]]++] = t;
+            }
+            return null;
+        });
+
+        // split each cluster into chunks, sum them in parallel, and add them
+        // up left to right
+        final int[] chunkCluster = this._chunkCluster;
+        final int[] chunkStart = this._chunkStart;
+        final double[] sums = this._chunkSums;
+        int chunks = 0;
+        for (int c = 0; c < clc; c++) {
+            for (int i = starts[c]; i < starts[c + 1]; i += SUM_CHUNK) {
+                chunkCluster[chunks] = c;
+                chunkStart[chunks++] = i;
+            }
+        }
+        Parallel.forRange(pool, 0, chunks, 1, (lo, hi) -> {
+            for (int j = lo; j < hi; j++) {
+                final int off = j * attrc;
+                final int end = Math.min(chunkStart[j] + SUM_CHUNK,
+                        starts[chunkCluster[j] + 1]);
+                Arrays.fill(sums, off, off + attrc, 0);
+                for (int i = chunkStart[j]; i < end; i++) {
+                    for (int k = 0; k < attrc; k++) {
+                        sums[off + k] += data.getAttr(order[i], k);
+                    }
                 }
-                newCounts[c] = 0;
+            }
+            return null;
+        });
+        for (int j = 0; j < chunks; j++) {
+            final int off = chunkCluster[j] * attrc;
+            for (int k = 0; k < attrc; k++) {
+                newCenters[off + k] += sums[j * attrc + k];
             }
         }
     }
 
-    public KMeans(DataSet data, int clusterCnt, Random rand) {
-        this(data, clusterCnt, initCenters(data, clusterCnt, rand));
+    /**
+     * Return whether another center might be as close to tuple t as min_c,
+     * given the rounding error of the blocked distances, so the tuple must be
+     * assigned from exact distances.
+     *
+     * @param dists The blocked distances from t to each center, at off
+     */
+    private boolean nearTie(DataSet data, int t, double[] dists, int off,
+            int min_c) {
+        final int attrc = data.attrCnt;
+        final double tn = data.normsSq()[t];
+        final double[] cn = this._centerNorms;
+        final double lim = dists[off + min_c]
+                + BlockedDistance.error(tn, cn[min_c], attrc);
+        for (int c = 0; c < clusterCnt; c++) {
+            if (c == min_c) continue;
+            double err = BlockedDistance.error(tn, cn[c], attrc);
+            if (dists[off + c] - err <= lim) return true;
+        }
+        return false;
+    }
+
+    /** Find the smallest of n values, preferring the lowest index */
+    private static int argmin(double[] vals, int off, int n) {
+        double min = Double.POSITIVE_INFINITY;
+        int min_i = 0;
+        for (int i = 0; i < n; i++) {
+            if (vals[off + i] >= min) continue;
+            min = vals[off + i];
+            min_i = i;
+        }
+        return min_i;
+    }
+
+    /**
+     * Find the center closest to a tuple. Ties go to the lowest center index.
+     *
+     * @param centers The cluster centers, as a flat array of tuples
+     * @return The index of the closest center
+     */
+    public static int nearestCenter(DataSet data, int t, double[] centers,
+            int clusterCnt) {
+        return nearestCenter(data, t, centers, clusterCnt, data.attrCnt);
+    }
+
+    /**
+     * Find the center closest to a tuple of any kind of data set, e.g. an
+     * {@link OffHeapDataSet}. Ties go to the lowest center index.
+     *
+     * @see #nearestCenter(DataSet, int, double[], int)
+     */
+    public static int nearestCenter(TupleDistance data, long t,
+            double[] centers, int clusterCnt, int attrc) {
+        double min_d2 = Double.POSITIVE_INFINITY;
+        int min_c = 0;
+        for (int c = 0; c < clusterCnt; c++) {
+            double d2 = data.distSq(t, centers, attrc * c);
+            if (d2 >= min_d2) continue;
+            min_d2 = d2;
+            min_c = c;
+        }
+        return min_c;
     }
 
     /** Find random starting points for clusters */
@@ -74,6 +329,28 @@ public class KMeans extends Clustering {
         return centers;
     }
 
+    /**
+     * Replace each center by the mean of the tuples assigned to it, and reset
+     * the accumulators to zero. Clusters that lost all of their tuples keep
+     * their previous center instead of becoming NaN, which also keeps the
+     * distance bounds of the accelerated variants finite.
+     *
+     * @param centers The cluster centers to update
+     * @param sums The per-cluster sums of the assigned tuples
+     * @param counts The per-cluster counts of the assigned tuples
+     */
+    static void moveCenters(double[] centers, double[] sums, int[] counts,
+            int clusterCnt, int attrc) {
+        for (int c = 0; c < clusterCnt; c++) {
+            final int off = c * attrc;
+            for (int k = 0; k < attrc; k++) {
+                if (counts[c] > 0) centers[off + k] = sums[off + k] / counts[c];
+                sums[off + k] = 0;
+            }
+            counts[c] = 0;
+        }
+    }
+
     @Override public int tupleCount() {
         return mapping.length;
     }
@@ -86,6 +363,12 @@ public class KMeans extends Clustering {
         return mapping[tuple] + 1;
     }
 
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
     @Override public String toString() {
         return desc;
     }
@@ -0,0 +1,51 @@
+/**
+ * A clustering read back from a file, e.g. a {@code .truth} file or the
+ * output of another algorithm. See {@link TextReader#readClustering}.
+ */
+public class LoadedClustering extends Clustering {
+
+    private final int[]  mapping;
+
+    private final int    tupleCnt;
+
+    private final int    clusterCnt;
+
+    private final String desc;
+
+    /**
+     * @param mapping The cluster ID of each tuple, possibly followed by unused
+     *            space
+     * @param tupleCnt The number of tuples
+     * @param clusterCnt The number of clusters
+     * @param desc The description of the original clustering
+     */
+    public LoadedClustering(int[] mapping, int tupleCnt, int clusterCnt,
+            String desc) {
+        assert (mapping.length >= tupleCnt);
+        this.mapping = mapping;
+        this.tupleCnt = tupleCnt;
+        this.clusterCnt = clusterCnt;
+        this.desc = desc;
+    }
+
+    @Override public int tupleCount() {
+        return tupleCnt;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        assert tuple < tupleCnt;
+        return mapping[tuple];
+    }
+
+    @Override public void labels(int[] out) {
+        System.arraycopy(mapping, 0, out, 0, tupleCnt);
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -1,4 +1,6 @@
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 
@@ -8,17 +10,78 @@ public class Main {
         tests.addAlgorithm("kmeans", (data, rand, clCnt) -> {
             return new KMeans(data, clCnt, rand);
         });
+        tests.addAlgorithm("kmeans-parallel", (data, rand, clCnt) -> {
+            return new KMeans(data, clCnt, rand, ForkJoinPool.commonPool());
+        });
+        tests.addAlgorithm("kmeans-kmpp", (data, rand, clCnt) -> {
+            int[] seeds = Seeding.kMeansPlusPlus(data, clCnt, rand);
+            return new KMeans(data, clCnt, Seeding.centers(data, seeds));
+        });
+        tests.addAlgorithm("kmeans-kmpar", (data, rand, clCnt) -> {
+            int[] seeds = Seeding.kMeansParallel(data, clCnt, 5, rand,
+                    ForkJoinPool.commonPool());
+            return new KMeans(data, clCnt, Seeding.centers(data, seeds));
+        });
+        tests.addAlgorithm("kmeans-elkan", (data, rand, clCnt) -> {
+            return new ElkanKMeans(data, clCnt, rand);
+        });
+        tests.addAlgorithm("kmeans-hamerly", (data, rand, clCnt) -> {
+            return new HamerlyKMeans(data, clCnt, rand);
+        });
+        tests.addAlgorithm("kmeans-elkan-kmpp", (data, rand, clCnt) -> {
+            int[] seeds = Seeding.kMeansPlusPlus(data, clCnt, rand);
+            return new ElkanKMeans(data, clCnt, Seeding.centers(data, seeds));
+        });
+        tests.addAlgorithm("kmeans-hamerly-kmpp", (data, rand, clCnt) -> {
+            int[] seeds = Seeding.kMeansPlusPlus(data, clCnt, rand);
+            return new HamerlyKMeans(data, clCnt, Seeding.centers(data,
+                    seeds));
+        });
+        tests.addAlgorithm("kmeans-yinyang", (data, rand, clCnt) -> {
+            return new YinyangKMeans(data, clCnt, rand);
+        });
+        tests.addAlgorithm("kmeans-minibatch", (data, rand, clCnt) -> {
+            return new MiniBatchKMeans(data, clCnt, rand);
+        });
+        tests.addAlgorithm("kmeans-float", FloatDataSet::copyOf, (fdata, rand,
+                clCnt) -> {
+            return new FloatKMeans(fdata, clCnt, rand, true);
+        });
+        tests.addAlgorithm("kmeans-columnar", ColumnarDataSet::copyOf, (cdata,
+                rand, clCnt) -> {
+            return new ColumnarKMeans(cdata, clCnt, rand);
+        });
         tests.addAlgorithm("dbscan", (data, rand, clCnt) -> {
             return new DBSCAN(data, rand);
         });
         tests.addAlgorithm("cmeans", (data, rand, clCnt) -> {
             // cheap hack - the cmeans implementation will just use the
             // first clCnt tuples as the initial centers
-                return new C_means2(data, clCnt, data.flatData);
-            });
+            return new C_means2(data, clCnt, data.flatData);
+        });
+        tests.addAlgorithm("cmeans-kmpp", (data, rand, clCnt) -> {
+            int[] seeds = Seeding.kMeansPlusPlus(data, clCnt, rand);
+            return new C_means2(data, clCnt, Seeding.centers(data, seeds));
+        });
         tests.addAlgorithm("kmedoids", (data, rand, clCnt) -> {
             return new kMedoids(data, clCnt, rand);
         });
+        tests.addAlgorithm("kmedoids-kmpp", (data, rand, clCnt) -> {
+            return new kMedoids(data, clCnt, Seeding.kMeansPlusPlus(data,
+                    clCnt, rand));
+        });
+        tests.addAlgorithm("kmedoids-eager", (data, rand, clCnt) -> {
+            return new kMedoids(data, clCnt, rand, true);
+        });
+        tests.addAlgorithm("kmedoids-parallel", (data, rand, clCnt) -> {
+            return new kMedoids(data, clCnt, rand, ForkJoinPool.commonPool());
+        });
+        tests.addAlgorithm("clara", (data, rand, clCnt) -> {
+            return new CLARA(data, clCnt, rand);
+        });
+        tests.addAlgorithm("clarans", (data, rand, clCnt) -> {
+            return new CLARANS(data, clCnt, rand);
+        });
 
         if (args.length == 0 || args[0].equalsIgnoreCase("perf")) {
             double maxPerfTime = 1.0;
@@ -26,7 +89,9 @@ public class Main {
             tests.perfTests(maxPerfTime);
         }
         if (args.length == 0 || args[0].equalsIgnoreCase("quality")) {
-            tests.qualityTests();
+            double maxQualityTime = 1.0;
+            if (args.length > 1) maxQualityTime = Double.parseDouble(args[1]);
+            tests.qualityTests(maxQualityTime);
         }
         if (args.length == 0 || args[0].equalsIgnoreCase("testdata")) {
             int ptCnt = 1000;
@@ -48,5 +113,11 @@ public class Main {
         if (args.length == 0 || args[0].equalsIgnoreCase("concave")) {
             tests.concaveTest();
         }
+        if (args.length > 2 && args[0].equalsIgnoreCase("reload")) {
+            // reload <dir> <name>...: cluster saved data sets again
+            for (int i = 2; i < args.length; i++) {
+                tests.reloadTest(Paths.get(args[1]), args[i]);
+            }
+        }
     }
 }
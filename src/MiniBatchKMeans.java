@@ -0,0 +1,212 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Mini-batch K-Means (Sculley, 2010).
+ * <p>
+ * Instead of full passes over the data until no assignment changes, the
+ * centers are updated from a fixed number of small batches of tuples. Each
+ * tuple in a batch pulls its closest center towards itself with a per-center
+ * learning rate of {@code 1 / (tuples seen by that center)}, so each center is
+ * the running mean of every tuple it has absorbed. After training, every tuple
+ * is assigned to its closest center once.
+ * <p>
+ * The batches can come from any source, e.g. a file or a stream that is never
+ * fully materialised; see {@link #MiniBatchKMeans(DataSet, int, double[],
+ * Iterator)}. An {@link OffHeapDataSet} can be clustered directly, without
+ * copying it onto the heap.
+ */
+public class MiniBatchKMeans extends Clustering {
+
+    public static final int DEFAULT_BATCH_SIZE  = 1000;
+
+    public static final int DEFAULT_BATCH_COUNT = 100;
+
+    private final int[]     mapping;
+
+    private final long[]    seen;      // tuples absorbed by each center
+
+    private int[]           _batchMap; // closest center of each batch tuple
+
+    private final int       clusterCnt;
+
+    private final String    desc;
+
+    /**
+     * Train on batches from an arbitrary source, then cluster a data set.
+     *
+     * @param data The data set to cluster after training
+     * @param centers The initial centers, updated in place
+     * @param batches The training batches. Each batch must have the same
+     *            attribute count as {@code data}, and is only accessed until
+     *            the next call to {@code batches.next()}.
+     */
+    public MiniBatchKMeans(DataSet data, int clusterCnt, double[] centers,
+            Iterator<DataSet> batches) {
+        super(data);
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        assert (centers.length >= clusterCnt * attrc);
+        this.clusterCnt = clusterCnt;
+        this.seen = new long[clusterCnt];
+        this._batchMap = new int[0];
+
+        this.desc = train(batches, attrc, centers);
+
+        final int[] mapping = this.mapping = new int[tupc];
+        for (int t = 0; t < tupc; t++) {
+            mapping[t] = KMeans.nearestCenter(data, t, centers, clusterCnt);
+        }
+    }
+
+    /**
+     * Train on random batches drawn from an off-heap data set, then cluster
+     * it in place. The data set may hold more than the 2^31 values of a
+     * {@link DataSet}, but its tuple count must fit in an {@code int}.
+     *
+     * @throws ArithmeticException If there are too many tuples
+     */
+    public MiniBatchKMeans(OffHeapDataSet data, int clusterCnt,
+            double[] centers, int batchSize, int batchCnt, Random rand) {
+        final int attrc = data.attrCnt;
+        final int tupc = Math.toIntExact(data.tupleCnt);
+        assert (centers.length >= clusterCnt * attrc);
+        this.clusterCnt = clusterCnt;
+        this.seen = new long[clusterCnt];
+        this._batchMap = new int[0];
+
+        this.desc = train(sample(data, batchSize, batchCnt, rand), attrc,
+                centers);
+
+        final int[] mapping = this.mapping = new int[tupc];
+        for (int t = 0; t < tupc; t++) {
+            mapping[t] = KMeans.nearestCenter(data, t, centers, clusterCnt,
+                    attrc);
+        }
+    }
+
+    /** Train on random batches drawn from the data set itself. */
+    public MiniBatchKMeans(DataSet data, int clusterCnt, double[] centers,
+            int batchSize, int batchCnt, Random rand) {
+        this(data, clusterCnt, centers, sample(data, batchSize, batchCnt, rand));
+    }
+
+    public MiniBatchKMeans(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, KMeans.initCenters(data, clusterCnt, rand),
+                DEFAULT_BATCH_SIZE, DEFAULT_BATCH_COUNT, rand);
+    }
+
+    /** Update the centers from all batches, and return the description */
+    private String train(Iterator<DataSet> batches, int attrc,
+            double[] centers) {
+        long batchCnt = 0, tupleCnt = 0;
+        while (batches.hasNext()) {
+            DataSet batch = batches.next();
+            assert (batch.attrCnt == attrc);
+            update(batch, centers);
+            batchCnt++;
+            tupleCnt += batch.tupleCnt;
+        }
+        return String.format("%s(clusterCnt=%d, batches=%d, tuples=%d)",
+                getClass().getSimpleName(), clusterCnt, batchCnt, tupleCnt);
+    }
+
+    /** Update the centers from one batch */
+    private void update(DataSet batch, double[] centers) {
+        final int attrc = batch.attrCnt, tupc = batch.tupleCnt;
+        if (_batchMap.length < tupc) _batchMap = new int[tupc];
+        final int[] batchMap = this._batchMap;
+
+        // assign the whole batch before moving any center
+        for (int t = 0; t < tupc; t++) {
+            batchMap[t] = KMeans.nearestCenter(batch, t, centers, clusterCnt);
+        }
+        for (int t = 0; t < tupc; t++) {
+            final int c = batchMap[t], off = c * attrc;
+            final double rate = 1.0 / ++seen[c];
+            for (int k = 0; k < attrc; k++) {
+                double x = batch.getAttr(t, k);
+                centers[off + k] += rate * (x - centers[off + k]);
+            }
+        }
+    }
+
+    /**
+     * Draw random batches of tuples (with replacement) from a data set.
+     * <p>
+     * To avoid allocation, every batch returned by the iterator is the same
+     * {@code DataSet} instance, refilled on each call to {@code next()}.
+     */
+    public static Iterator<DataSet> sample(DataSet data, int batchSize,
+            int batchCnt, Random rand) {
+        final int attrc = data.attrCnt;
+        return sample(data.tupleCnt, attrc, batchSize, batchCnt, rand, (t,
+                out, off) -> System.arraycopy(data.flatData, (int) t * attrc,
+                out, off, attrc));
+    }
+
+    /**
+     * Draw random batches of tuples (with replacement) from an off-heap data
+     * set, e.g. one too large for the heap.
+     * 
+     * @see #sample(DataSet, int, int, Random)
+     */
+    public static Iterator<DataSet> sample(OffHeapDataSet data, int batchSize,
+            int batchCnt, Random rand) {
+        return sample(data.tupleCnt, data.attrCnt, batchSize, batchCnt, rand,
+                data::getTuple);
+    }
+
+    /** Copies one tuple of a data set into an array */
+    @FunctionalInterface private static interface TupleSource {
+
+        void getTuple(long tup, double[] out, int off);
+    }
+
+    private static Iterator<DataSet> sample(long tupleCnt, int attrc,
+            int batchSize, int batchCnt, Random rand, TupleSource src) {
+        final int size = (int) Math.min(batchSize, tupleCnt);
+        final DataSet batch = new DataSet(size, attrc, new double[size * attrc]);
+        return new Iterator<DataSet>() {
+
+            private int remaining = (size > 0) ? batchCnt : 0;
+
+            @Override public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override public DataSet next() {
+                if (remaining <= 0) throw new NoSuchElementException();
+                remaining--;
+                for (int i = 0; i < size; i++) {
+                    long t = tupleCnt <= Integer.MAX_VALUE ? rand.nextInt(
+                            (int) tupleCnt) : rand.nextLong(tupleCnt);
+                    src.getTuple(t, batch.flatData, i * attrc);
+                }
+                return batch;
+            }
+        };
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Export of data sets, labels and result tables as NumPy {@code .npy} files
+ * (format version 1.0), which can be loaded or memory-mapped directly with
+ * {@code numpy.load(file, mmap_mode='r')}.
+ * <p>
+ * Doubles are written as {@code '<f8'} and ints as {@code '<i4'}, in C
+ * order, straight from the underlying arrays.
+ */
+public final class Npy {
+
+    /** The magic string {@code "\x93NUMPY"}, then format version 1.0 */
+    private static final byte[] MAGIC = { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y',
+            1, 0 };
+
+    /** The header is padded so the data starts at a multiple of this */
+    private static final int    ALIGN = 64;
+
+    /** Size of the buffer used for writing */
+    private static final int    CHUNK = 1 << 16;
+
+    private Npy() {}
+
+    /** Write a data set as a {@code (tupleCnt, attrCnt)} array of doubles. */
+    public static void write(DataSet data, Path file) throws IOException {
+        write(file, data.flatData, data.tupleCnt, data.attrCnt);
+    }
+
+    /** Write the cluster ID of each tuple as a 1-d array of ints. */
+    public static void write(Clustering cl, Path file) throws IOException {
+        final int tupc = cl.tupleCount();
+        int[] labels = new int[tupc];
+        cl.labels(labels);
+        write(file, labels, tupc);
+    }
+
+    /**
+     * Write the per-cluster statistics as a {@code (clusterCount, 4)} array of
+     * doubles, with the columns cluster ID, compactness, separation and
+     * silhouette coef.
+     */
+    public static void write(Silhouette sil, Path file) throws IOException {
+        final int clc = sil.clusterCount();
+        double[] table = new double[clc * 4];
+        for (int c = 1; c <= clc; c++) {
+            final int off = (c - 1) * 4;
+            table[off] = c;
+            table[off + 1] = sil.compactness(c);
+            table[off + 2] = sil.separation(c);
+            table[off + 3] = sil.silhouette(c);
+        }
+        write(file, table, clc, 4);
+    }
+
+    /**
+     * Write a table of doubles as a {@code (rows, cols)} array.
+     *
+     * @param values The table, as a flat array of rows
+     */
+    public static void write(Path file, double[] values, int rows, int cols)
+            throws IOException {
+        DoubleBuffer src = DoubleBuffer.wrap(values, 0, rows * cols);
+        try (FileChannel ch = open(file, "<f8", "(" + rows + ", " + cols
+                + ")")) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            while (src.hasRemaining()) {
+                final int n = Math.min(CHUNK / Double.BYTES, src.remaining());
+                buf.asDoubleBuffer().put(src.slice().limit(n));
+                src.position(src.position() + n);
+                buf.limit(n * Double.BYTES);
+                writeFully(ch, buf);
+            }
+        }
+    }
+
+    /** Write the first {@code cnt} ints of an array as a 1-d array. */
+    public static void write(Path file, int[] values, int cnt)
+            throws IOException {
+        IntBuffer src = IntBuffer.wrap(values, 0, cnt);
+        try (FileChannel ch = open(file, "<i4", "(" + cnt + ",)")) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            while (src.hasRemaining()) {
+                final int n = Math.min(CHUNK / Integer.BYTES, src.remaining());
+                buf.asIntBuffer().put(src.slice().limit(n));
+                src.position(src.position() + n);
+                buf.limit(n * Integer.BYTES);
+                writeFully(ch, buf);
+            }
+        }
+    }
+
+    /** Create the file and write the header */
+    private static FileChannel open(Path file, String descr, String shape)
+            throws IOException {
+        String dict = "{'descr': '" + descr + "', 'fortran_order': False, "
+                + "'shape': " + shape + ", }";
+        // magic, version, header length, dict, padding, newline
+        int len = MAGIC.length + 2 + dict.length() + 1;
+        int pad = (ALIGN - len % ALIGN) % ALIGN;
+        StringBuilder header = new StringBuilder(dict);
+        for (int i = 0; i < pad; i++) {
+            header.append(' ');
+        }
+        header.append('\n');
+        byte[] bytes = header.toString().getBytes(StandardCharsets.US_ASCII);
+
+        ByteBuffer buf = ByteBuffer.allocate(MAGIC.length + 2 + bytes.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC).putShort((short) bytes.length).put(bytes).flip();
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            writeFully(ch, buf);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        return ch;
+    }
+
+    /** Write a buffer from position to limit, then clear it */
+    private static void writeFully(FileChannel ch, ByteBuffer buf)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+}
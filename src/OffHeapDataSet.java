@@ -0,0 +1,202 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * A data set stored outside the Java heap, for data sets too large for the
+ * flat {@code double[]} of {@link DataSet}, which is limited to 2^31 values.
+ * <p>
+ * Tuples are indexed by {@code long}, and stored in chunks of at most
+ * {@link #CHUNK_VALUES} values, each holding a whole number of tuples. The
+ * chunks are either direct buffers ({@link #allocate(long, int)}) or mapped
+ * regions of a {@link DataSetFile} ({@link DataSetFile#map}), so a huge data
+ * set adds no garbage collection pressure.
+ * <p>
+ * The access methods mirror those of {@link DataSet}, and both implement
+ * {@link TupleDistance}, so code written against it, like
+ * {@link KMeans#nearestCenter(TupleDistance, long, double[], int, int)}, works
+ * on either. {@link MiniBatchKMeans} clusters an off-heap data set directly,
+ * as long as its tuple count fits in an {@code int}. Algorithms that need a {@link DataSet} can work on slices of
+ * it ({@link #slice(long, int)}).
+ */
+public final class OffHeapDataSet implements TupleDistance {
+
+    /** The largest number of values per chunk (1 GB) */
+    public static final int     CHUNK_VALUES = 1 << 27;
+
+    /** The number of tuples in the data set. Strictly non-negative. */
+    public final long           tupleCnt;
+
+    /** The number of attributes per tuple. Strictly positive. */
+    public final int            attrCnt;
+
+    /** The number of tuples in each chunk, except possibly the last */
+    private final int           chunkTuples;
+
+    private final DoubleBuffer[] chunks;
+
+    OffHeapDataSet(long tupleCnt, int attrCnt, DoubleBuffer[] chunks) {
+        assert (chunks.length == chunkCount(tupleCnt, attrCnt));
+        this.tupleCnt = tupleCnt;
+        this.attrCnt = attrCnt;
+        this.chunkTuples = chunkTuples(attrCnt);
+        this.chunks = chunks;
+    }
+
+    /** The number of tuples in each full chunk, for a given attribute count */
+    static int chunkTuples(int attrCnt) {
+        return Math.max(1, CHUNK_VALUES / attrCnt);
+    }
+
+    /** The number of chunks needed to hold a data set */
+    static int chunkCount(long tupleCnt, int attrCnt) {
+        final int ct = chunkTuples(attrCnt);
+        return Math.toIntExact((tupleCnt + ct - 1) / ct);
+    }
+
+    /** Allocate a new data set of direct buffers, filled with zeros. */
+    public static OffHeapDataSet allocate(long tupleCnt, int attrCnt) {
+        final int ct = chunkTuples(attrCnt);
+        DoubleBuffer[] chunks = new DoubleBuffer[chunkCount(tupleCnt, attrCnt)];
+        for (int i = 0; i < chunks.length; i++) {
+            long tups = Math.min(ct, tupleCnt - (long) i * ct);
+            chunks[i] = ByteBuffer.allocateDirect((int) tups * attrCnt
+                    * Double.BYTES).order(ByteOrder.nativeOrder())
+                    .asDoubleBuffer();
+        }
+        return new OffHeapDataSet(tupleCnt, attrCnt, chunks);
+    }
+
+    /** Copy a data set off the heap. */
+    public static OffHeapDataSet copyOf(DataSet data) {
+        final int attrc = data.attrCnt;
+        OffHeapDataSet res = allocate(data.tupleCnt, attrc);
+        for (int i = 0, t = 0; i < res.chunks.length; i++) {
+            DoubleBuffer chunk = res.chunks[i].duplicate();
+            chunk.put(data.flatData, t * attrc, chunk.remaining());
+            t += res.chunkTuples;
+        }
+        return res;
+    }
+
+    /** Convenience method to lookup attributes from the data set */
+    public double getAttr(long tup, int attr) {
+        assert tup < tupleCnt && attr < attrCnt;
+        return chunk(tup).get(offset(tup) + attr);
+    }
+
+    /**
+     * Set an attribute. Fails for data sets mapped from a file, which are
+     * read-only.
+     */
+    public void setAttr(long tup, int attr, double value) {
+        assert tup < tupleCnt && attr < attrCnt;
+        chunk(tup).put(offset(tup) + attr, value);
+    }
+
+    /**
+     * Calculate the (euclidean) distance^2 between two tuples.
+     * 
+     * @see DataSet#distSq(int, int)
+     */
+    public double distSq(long tupA, long tupB) {
+        assert tupA < tupleCnt && tupB < tupleCnt;
+        final DoubleBuffer a = chunk(tupA), b = chunk(tupB);
+        final int offA = offset(tupA), offB = offset(tupB);
+        double distSq = 0;
+        for (int k = 0; k < attrCnt; k++) {
+            double d = a.get(offA + k) - b.get(offB + k);
+            distSq += d * d;
+        }
+        return distSq;
+    }
+
+    /**
+     * Calculate the (euclidean) distance between two tuples.
+     * 
+     * @see #distSq(long, long)
+     */
+    public double dist(long tupA, long tupB) {
+        return Math.sqrt(distSq(tupA, tupB));
+    }
+
+    /**
+     * Calculate the (euclidean) distance^2 between two tuples, where one tuple
+     * is stored in an external array.
+     * 
+     * @see DataSet#distSq(int, double[], int)
+     */
+    @Override public double distSq(long tupA, double[] dataB, int offB) {
+        assert tupA < tupleCnt && offB <= dataB.length - attrCnt;
+        final DoubleBuffer a = chunk(tupA);
+        final int offA = offset(tupA);
+        double distSq = 0;
+        for (int k = 0; k < attrCnt; k++) {
+            double d = a.get(offA + k) - dataB[offB + k];
+            distSq += d * d;
+        }
+        return distSq;
+    }
+
+    /**
+     * Calculate the (euclidean) distance between two tuples, where one tuple is
+     * stored in an external array.
+     * 
+     * @see #distSq(long, double[], int)
+     */
+    public double dist(long tupA, double[] dataB, int offB) {
+        return Math.sqrt(distSq(tupA, dataB, offB));
+    }
+
+    /** Copy one tuple into an array. */
+    public void getTuple(long tup, double[] out, int off) {
+        assert tup < tupleCnt && off <= out.length - attrCnt;
+        chunk(tup).get(offset(tup), out, off, attrCnt);
+    }
+
+    /**
+     * Copy a range of tuples into a new {@link DataSet}.
+     * 
+     * @throws ArithmeticException If the range does not fit in a DataSet
+     */
+    public DataSet slice(long from, int cnt) {
+        assert from >= 0 && from + cnt <= tupleCnt;
+        final int attrc = attrCnt;
+        double[] flat = new double[Math.multiplyExact(cnt, attrc)];
+        for (int i = 0; i < cnt;) {
+            final long tup = from + i;
+            final int n = (int) Math.min(cnt - i, chunkTuples - tup
+                    % chunkTuples);
+            chunk(tup).get(offset(tup), flat, i * attrc, n * attrc);
+            i += n;
+        }
+        return new DataSet(cnt, attrc, flat);
+    }
+
+    /**
+     * Copy the whole data set onto the heap.
+     * 
+     * @throws ArithmeticException If the data set does not fit in a DataSet
+     */
+    public DataSet toDataSet() {
+        return slice(0, Math.toIntExact(tupleCnt));
+    }
+
+    /** Read-only views of the chunks, in order, positioned at zero */
+    DoubleBuffer[] chunks() {
+        DoubleBuffer[] res = Arrays.copyOf(chunks, chunks.length);
+        for (int i = 0; i < res.length; i++) {
+            res[i] = res[i].asReadOnlyBuffer();
+        }
+        return res;
+    }
+
+    private DoubleBuffer chunk(long tup) {
+        return chunks[(int) (tup / chunkTuples)];
+    }
+
+    private int offset(long tup) {
+        return (int) (tup % chunkTuples) * attrCnt;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Utility for splitting loops over index ranges (usually tuples) across a
+ * {@link ForkJoinPool}.
+ * <p>
+ * A range is always split the same way, by halving until each piece is at most
+ * {@code grain} long, and partial results are always combined left to right.
+ * This is independent of the number of threads, and even of whether a pool is
+ * used at all, so results are deterministic (including floating-point
+ * rounding) as long as each piece is.
+ */
+public final class Parallel {
+
+    private Parallel() {}
+
+    /** The body of a loop over a contiguous index range. */
+    @FunctionalInterface public static interface RangeBody<R> {
+
+        /** Process the indices {@code [lo, hi)} and return a partial result */
+        R apply(int lo, int hi);
+    }
+
+    /**
+     * Evaluate a loop body over the range {@code [lo, hi)} and combine the
+     * partial results.
+     *
+     * @param pool The pool to run in, or {@code null} to run sequentially in
+     *            the calling thread
+     * @param grain The largest piece of the range processed by a single call to
+     *            {@code body}
+     * @param body Processes one piece of the range
+     * @param combine Combines the results of two adjacent pieces (left, right)
+     * @return The combined result of all pieces
+     */
+    public static <R> R reduce(ForkJoinPool pool, int lo, int hi, int grain,
+            RangeBody<R> body, BinaryOperator<R> combine) {
+        Task<R> task = new Task<>(lo, hi, Math.max(grain, 1), pool != null,
+                body, combine);
+        return pool == null ? task.compute() : pool.invoke(task);
+    }
+
+    /**
+     * Run a loop body over the range {@code [lo, hi)}, with no result.
+     *
+     * @see #reduce(ForkJoinPool, int, int, int, RangeBody, BinaryOperator)
+     */
+    public static void forRange(ForkJoinPool pool, int lo, int hi, int grain,
+            RangeBody<?> body) {
+        reduce(pool, lo, hi, grain, body, (a, b) -> null);
+    }
+
+    @SuppressWarnings("serial") private static final class Task<R> extends
+            RecursiveTask<R> {
+
+        private final int               lo, hi, grain;
+
+        private final boolean           fork;
+
+        private final RangeBody<R>      body;
+
+        private final BinaryOperator<R> combine;
+
+        Task(int lo, int hi, int grain, boolean fork, RangeBody<R> body,
+                BinaryOperator<R> combine) {
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.fork = fork;
+            this.body = body;
+            this.combine = combine;
+        }
+
+        @Override protected R compute() {
+            if (hi - lo <= grain) return body.apply(lo, hi);
+            final int mid = (lo + hi) >>> 1;
+            Task<R> left = new Task<>(lo, mid, grain, fork, body, combine);
+            Task<R> right = new Task<>(mid, hi, grain, fork, body, combine);
+            if (!fork) return combine.apply(left.compute(), right.compute());
+            left.fork();
+            R r = right.compute();
+            return combine.apply(left.join(), r);
+        }
+    }
+}
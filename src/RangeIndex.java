@@ -0,0 +1,19 @@
+/**
+ * A spatial index over a data set that can answer fixed-radius neighbor
+ * queries faster than a linear scan.
+ */
+public interface RangeIndex {
+
+    /**
+     * Find all tuples within a given distance of a tuple, including the tuple
+     * itself.
+     *
+     * @param tup The index of the query tuple
+     * @param eps The query radius
+     * @param out Receives the indices of all neighbors, in no particular
+     *            order. Must be large enough to hold every tuple in the data
+     *            set.
+     * @return The number of neighbors written to {@code out}
+     */
+    int rangeQuery(int tup, double eps, int[] out);
+}
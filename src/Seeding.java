@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Careful seeding of initial cluster centers, as an alternative to picking
+ * uniformly random tuples.
+ * <p>
+ * All methods return the indices of the chosen tuples, which can be passed
+ * directly to {@link kMedoids}, or turned into a center array for
+ * {@link KMeans} and {@link C_means2} with {@link #centers(DataSet, int[])}.
+ */
+public final class Seeding {
+
+    /** Number of tuples updated by each parallel task */
+    private static final int GRAIN = 4096;
+
+    private Seeding() {}
+
+    /**
+     * k-means++ seeding (Arthur and Vassilvitskii, 2007). Each center is drawn
+     * with probability proportional to its distance^2 from the closest center
+     * chosen so far.
+     */
+    public static int[] kMeansPlusPlus(DataSet data, int clCnt, Random rand) {
+        return kMeansPlusPlus(data, clCnt, rand, null);
+    }
+
+    /**
+     * k-means++ seeding, updating the distances to the chosen centers in
+     * parallel. The result does not depend on the number of threads.
+     *
+     * @param pool The pool to run in, or {@code null} to run sequentially
+     */
+    public static int[] kMeansPlusPlus(DataSet data, int clCnt, Random rand,
+            ForkJoinPool pool) {
+        final int tupc = data.tupleCnt;
+        int[] seeds = new int[clCnt];
+        double[] d2 = new double[tupc];
+        Arrays.fill(d2, Double.POSITIVE_INFINITY);
+        for (int c = 0; c < clCnt; c++) {
+            seeds[c] = (c == 0) ? rand.nextInt(tupc) : draw(d2, rand);
+            nearest(pool, data, seeds, c, c + 1, d2, null);
+        }
+        return seeds;
+    }
+
+    /**
+     * Scalable k-means|| seeding (Bahmani et al., 2012).
+     * <p>
+     * Instead of one pass per center, each of a few rounds samples about
+     * {@code 2 * clCnt} candidates at once, each tuple with probability
+     * proportional to its distance^2 from the closest candidate so far. The
+     * candidates are then weighted by the number of tuples closest to them and
+     * reduced to {@code clCnt} seeds with weighted k-means++.
+     *
+     * @param rounds The number of oversampling rounds, usually about 5
+     * @param pool The pool to run in, or {@code null} to run sequentially. The
+     *            result does not depend on the number of threads.
+     */
+    public static int[] kMeansParallel(DataSet data, int clCnt, int rounds,
+            Random rand, ForkJoinPool pool) {
+        final int tupc = data.tupleCnt;
+        final double oversample = 2.0 * clCnt;
+        double[] d2 = new double[tupc];
+        int[] near = new int[tupc];
+        Arrays.fill(d2, Double.POSITIVE_INFINITY);
+
+        // oversample candidates
+        int[] cand = new int[Math.max(16, 4 * clCnt)];
+        int candc = 0;
+        cand[candc++] = rand.nextInt(tupc);
+        nearest(pool, data, cand, 0, candc, d2, near);
+        for (int r = 0; r < rounds; r++) {
+            double phi = 0;
+            for (int t = 0; t < tupc; t++) {
+                phi += d2[t];
+            }
+            if (!(phi > 0)) break;
+            final int prev = candc;
+            for (int t = 0; t < tupc; t++) {
+                if (rand.nextDouble() * phi >= oversample * d2[t]) continue;
+                if (candc == cand.length) cand = Arrays.copyOf(cand, 2 * candc);
+                cand[candc++] = t;
+            }
+            nearest(pool, data, cand, prev, candc, d2, near);
+        }
+
+        if (candc <= clCnt) {
+            // too few candidates, draw the rest with plain k-means++
+            int[] seeds = Arrays.copyOf(cand, clCnt);
+            for (int c = candc; c < clCnt; c++) {
+                seeds[c] = draw(d2, rand);
+                nearest(pool, data, seeds, c, c + 1, d2, null);
+            }
+            return seeds;
+        }
+
+        // weight candidates by the number of tuples closest to them
+        double[] weight = new double[candc];
+        for (int t = 0; t < tupc; t++) {
+            weight[near[t]]++;
+        }
+
+        // weighted k-means++ over the candidates
+        final int attrc = data.attrCnt;
+        DataSet cdata = new DataSet(candc, attrc, centers(data,
+                Arrays.copyOf(cand, candc)));
+        double[] cd2 = new double[candc];
+        double[] wd2 = new double[candc];
+        Arrays.fill(cd2, Double.POSITIVE_INFINITY);
+        int[] seeds = new int[clCnt];
+        for (int c = 0; c < clCnt; c++) {
+            for (int i = 0; i < candc; i++) {
+                wd2[i] = weight[i] * cd2[i];
+            }
+            int s = (c == 0) ? draw(weight, rand) : draw(wd2, rand);
+            seeds[c] = cand[s];
+            for (int i = 0; i < candc; i++) {
+                cd2[i] = Math.min(cd2[i], cdata.distSq(i, s));
+            }
+        }
+        return seeds;
+    }
+
+    /** Copy the chosen seed tuples into a flat array of centers. */
+    public static double[] centers(DataSet data, int[] seeds) {
+        final int attrc = data.attrCnt;
+        double[] centers = new double[seeds.length * attrc];
+        for (int c = 0; c < seeds.length; c++) {
+            System.arraycopy(data.flatData, seeds[c] * attrc, centers, c
+                    * attrc, attrc);
+        }
+        return centers;
+    }
+
+    /**
+     * Lower each tuple's distance^2 to the closest seed, considering the new
+     * seeds in [from, to).
+     *
+     * @param near If not null, receives the index of each tuple's closest
+     *            seed
+     */
+    private static void nearest(ForkJoinPool pool, DataSet data, int[] seeds,
+            int from, int to, double[] d2, int[] near) {
+        Parallel.forRange(pool, 0, data.tupleCnt, GRAIN, (lo, hi) -> {
+            for (int t = lo; t < hi; t++) {
+                for (int s = from; s < to; s++) {
+                    double d = data.distSq(t, seeds[s]);
+                    if (d >= d2[t]) continue;
+                    d2[t] = d;
+                    if (near != null) near[t] = s;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Draw a random index with probability proportional to its weight. Falls
+     * back to a uniform draw if all weights are zero.
+     */
+    private static int draw(double[] weight, Random rand) {
+        double total = 0;
+        for (double w : weight) {
+            total += w;
+        }
+        if (!(total > 0)) return rand.nextInt(weight.length);
+        double r = rand.nextDouble() * total;
+        int last = 0;
+        for (int i = 0; i < weight.length; i++) {
+            if (weight[i] <= 0) continue;
+            last = i;
+            r -= weight[i];
+            if (r < 0) return i;
+        }
+        return last;
+    }
+}
@@ -1,7 +1,24 @@
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class Silhouette {
 
+    /** Number of tuples evaluated by each parallel task */
+    private static final int GRAIN            = 16;
+
+    /** Number of tuples evaluated by each task of the simplified silhouette */
+    private static final int GRAIN_SIMPLIFIED = 4096;
+
+    /** Default number of sampled tuples per cluster */
+    public static final int  DEFAULT_SAMPLES  = 100;
+
+    /** Default number of reference tuples per cluster */
+    public static final int  DEFAULT_REFS     = 200;
+
+    /** Normal quantile for a two-sided 95% confidence interval */
+    private static final double Z95           = 1.959964;
+
     public final int       tupCnt;
 
     /** Fraction of the tuples that are noise (and thus ignored) */
@@ -16,53 +33,90 @@ public class Silhouette {
     /** Average silhouette coef. of clusters, weighted by cluster population */
     public final double    silhouette;
 
+    /**
+     * Half-width of the 95% confidence interval of {@link #silhouette}, or
+     * zero if it was calculated exactly, see {@link #sampled}
+     */
+    public final double    silhouetteError;
+
     private final double[] clCmp;      // per-cluster average compactness 
 
     private final double[] clSep;      // per-cluster average separation 
 
     private final double[] clSil;      // per-cluster average silhouette coef
 
+    private final double[] clSilErr;   // per-cluster confidence half-width
+
     public Silhouette(DataSet data, Clustering cl) {
-        this.tupCnt = Math.min(data.tupleCnt, cl.tupleCount());
-        assert (tupCnt > 0);
+        this(data, cl, null);
+    }
+
+    /**
+     * Calculate the silhouette, optionally splitting the tuples across a
+     * pool.
+     * <p>
+     * The a/b/s values of each tuple are calculated in parallel and summed
+     * afterwards in tuple order, so the results are identical for any number
+     * of threads, including none.
+     *
+     * @param pool The pool to run in, or {@code null} to run sequentially
+     */
+    public Silhouette(DataSet data, Clustering cl, ForkJoinPool pool) {
+        this(data, cl, pool, false);
+    }
+
+    /**
+     * Calculate the simplified silhouette, which measures the distance from
+     * each tuple to the centroids of the clusters instead of to all of their
+     * members. This takes O(n*k) instead of O(n^2) time.
+     * <p>
+     * The fields have the same meaning as for the full silhouette: the
+     * compactness of a tuple is its distance to its own centroid, and its
+     * separation the distance to the closest other centroid.
+     *
+     * @param pool The pool to run in, or {@code null} to run sequentially
+     */
+    public static Silhouette simplified(DataSet data, Clustering cl,
+            ForkJoinPool pool) {
+        return new Silhouette(data, cl, pool, true);
+    }
+
+    private Silhouette(DataSet data, Clustering cl, ForkJoinPool pool,
+            boolean simplified) {
+        final int tupc = this.tupCnt = Math.min(data.tupleCnt,
+                cl.tupleCount());
+        assert (tupc > 0);
         final int clcnt = cl.clusterCount();
         assert (clcnt > 1);
 
-        int[] pop = new int[clcnt + 1];
-        for (int t = 0; t < tupCnt; t++) {
-            pop[cl.clusterID(t)]++;
+        final int[] ids = new int[cl.tupleCount()];
+        cl.labels(ids);
+        final int[] pop = new int[clcnt + 1];
+        for (int t = 0; t < tupc; t++) {
+            pop[ids[t]]++;
+        }
+        this.noise = pop[0] / (double) tupc;
+
+        // per tuple: compactness, separation and silhouette coef.
+        final double[] ta = new double[tupc];
+        final double[] tb = new double[tupc];
+        final double[] ts = new double[tupc];
+        if (simplified) {
+            centroidPass(data, tupc, ids, pop, clcnt, pool, ta, tb, ts);
+        } else {
+            pairwisePass(data, tupc, ids, pop, clcnt, pool, ta, tb, ts);
         }
-        this.noise = pop[0] / (double) tupCnt;
 
         double[] cmp = this.clCmp = new double[clcnt + 1];
         double[] sep = this.clSep = new double[clcnt + 1];
         double[] sil = this.clSil = new double[clcnt + 1];
-        double[] acc = new double[clcnt + 1];
-        for (int t = 0; t < tupCnt; t++) {
-            final int tclus = cl.clusterID(t);
+        this.clSilErr = new double[clcnt + 1];
+        for (int t = 0; t < tupc; t++) {
+            final int tclus = ids[t];
             if (tclus == 0) continue;
-            Arrays.fill(acc, 0);
-
-            for (int i = 0; i < tupCnt; i++) {
-                int iclus = cl.clusterID(i);
-                if (iclus == 0) continue;
-                double d = data.dist(t, i);
-                acc[iclus] += d;
-            }
-
-            double a = pop[tclus] > 1 ? acc[tclus] / (pop[tclus] - 1) : 0;
-            cmp[tclus] += a;
-
-            double b = Double.POSITIVE_INFINITY;
-            for (int c = 1; c <= clcnt; c++) {
-                if (tclus == c || pop[c] == 0) continue;
-                double bc = acc[c] / pop[c];
-                if (bc < b) b = bc;
-            }
-            sep[tclus] += b;
-
-            double s = Double.isFinite(b) ? (b - a) / Math.max(a, b) : 1.0;
-            sil[tclus] += s;
+            cmp[tclus] += ta[t];
+            sep[tclus] += tb[t];
+            sil[tclus] += ts[t];
         }
 
         double acmp = 0, asep = 0, asil = 0;   // non-noise avg stats
@@ -79,6 +133,237 @@ public class Silhouette {
         this.compactness = acmp = acmp / notnoisecnt;
         this.separation = asep = asep / notnoisecnt;
         this.silhouette = asil = asil / notnoisecnt;
+        this.silhouetteError = 0;
+    }
+
+    /**
+     * Estimate the silhouette from a stratified random sample, in time
+     * independent of the tuple count (apart from reading the labels).
+     * <p>
+     * Up to {@code samples} tuples are drawn from each cluster. The mean
+     * distance from each of them to the members of a cluster is estimated
+     * from one random sample of up to {@code refs} members of that cluster,
+     * shared by all sampled tuples. The per-cluster averages are then
+     * weighted by the cluster populations, as for the full silhouette.
+     * Clusters no larger than the sample sizes are evaluated completely.
+     * <p>
+     * {@link #silhouetteError} and {@link #silhouetteError(int)} give the
+     * half-width of the 95% confidence interval of the estimates. It combines
+     * the variance from sampling the tuples with the variance from sampling
+     * the references, propagated to the silhouette coefs. Since the
+     * references are shared, their errors are summed as if fully correlated.
+     *
+     * @param samples The number of tuples evaluated per cluster
+     * @param refs The number of reference tuples per cluster
+     */
+    public static Silhouette sampled(DataSet data, Clustering cl, int samples,
+            int refs, Random rand) {
+        return new Silhouette(data, cl, samples, refs, rand);
+    }
+
+    private Silhouette(DataSet data, Clustering cl, int samples, int refs,
+            Random rand) {
+        final int tupc = this.tupCnt = Math.min(data.tupleCnt,
+                cl.tupleCount());
+        assert (tupc > 0 && samples > 0 && refs > 0);
+        final int clcnt = cl.clusterCount();
+        assert (clcnt > 1);
+
+        final int[] ids = new int[cl.tupleCount()];
+        cl.labels(ids);
+        final int[] start = new int[clcnt + 2];
+        for (int t = 0; t < tupc; t++) {
+            start[ids[t] + 1]++;
+        }
+        this.noise = start[1] / (double) tupc;
+
+        // group tuples by cluster
+        for (int c = 0; c <= clcnt; c++) {
+            start[c + 1] += start[c];
+        }
+        final int[] order = new int[tupc];
+        int[] fill = Arrays.copyOf(start, clcnt + 1);
+        for (int t = 0; t < tupc; t++) {
+            order[fill[ids[t]]++] = t;
+        }
+
+        // shuffle the front of each cluster to draw the samples, and the
+        // references, which are a prefix of the same shuffle
+        final int[] nsamp = new int[clcnt + 1];
+        final int[] nref = new int[clcnt + 1];
+        for (int c = 1; c <= clcnt; c++) {
+            final int pop = start[c + 1] - start[c];
+            nsamp[c] = Math.min(samples, pop);
+            nref[c] = Math.min(refs, pop);
+            for (int i = 0; i < Math.max(nsamp[c], nref[c]); i++) {
+                int j = i + rand.nextInt(pop - i);
+                int tmp = order[start[c] + i];
+                order[start[c] + i] = order[start[c] + j];
+                order[start[c] + j] = tmp;
+            }
+        }
+
+        double[] cmp = this.clCmp = new double[clcnt + 1];
+        double[] sep = this.clSep = new double[clcnt + 1];
+        double[] sil = this.clSil = new double[clcnt + 1];
+        double[] err = this.clSilErr = new double[clcnt + 1];
+        double[] acc = new double[clcnt + 1];
+        double[] accVar = new double[clcnt + 1];
+        double acmp = 0, asep = 0, asil = 0, avar = 0, aref = 0;
+        final int notnoisecnt = tupc - (start[1] - start[0]);
+        for (int c = 1; c <= clcnt; c++) {
+            final int pop = start[c + 1] - start[c], m = nsamp[c];
+            if (pop == 0) continue;
+            double sumS = 0, sumS2 = 0, sumRef = 0;
+            for (int i = 0; i < m; i++) {
+                final int t = order[start[c] + i];
+
+                // mean distance to each cluster, estimated from its
+                // references, and the variance of that estimate
+                for (int c2 = 1; c2 <= clcnt; c2++) {
+                    double d = 0, d2 = 0;
+                    int n = 0;
+                    for (int j = 0; j < nref[c2]; j++) {
+                        final int u = order[start[c2] + j];
+                        if (u == t) continue;
+                        final double du = data.dist(t, u);
+                        d += du;
+                        d2 += du * du;
+                        n++;
+                    }
+                    // t itself is not one of the members it is compared to
+                    final int others = start[c2 + 1] - start[c2]
+                            - (c2 == c ? 1 : 0);
+                    acc[c2] = n > 0 ? d / n : 0;
+                    accVar[c2] = 0;
+                    if (n < 2) continue;
+                    double v = Math.max(0, (d2 - d * acc[c2]) / (n - 1));
+                    accVar[c2] = v * (1 - n / (double) others) / n;
+                }
+                double a = pop > 1 ? acc[c] : 0;
+                double b = Double.POSITIVE_INFINITY;
+                int bc = 0;
+                for (int c2 = 1; c2 <= clcnt; c2++) {
+                    if (c2 == c || start[c2 + 1] == start[c2]) continue;
+                    if (acc[c2] < b) {
+                        b = acc[c2];
+                        bc = c2;
+                    }
+                }
+                double si = Double.isFinite(b) ? (b - a) / Math.max(a, b) : 1.0;
+                cmp[c] += a;
+                sep[c] += b;
+                sumS += si;
+                sumS2 += si * si;
+
+                // error of si from the references, by the delta method
+                if (Double.isFinite(b) && Math.max(a, b) > 0) {
+                    final double da, db;
+                    if (b > a) {
+                        da = -1 / b;
+                        db = a / (b * b);
+                    } else {
+                        da = -b / (a * a);
+                        db = 1 / a;
+                    }
+                    final double va = pop > 1 ? accVar[c] : 0;
+                    sumRef += Math.sqrt(da * da * va + db * db * accVar[bc]);
+                }
+            }
+            cmp[c] /= m;
+            sep[c] /= m;
+            sil[c] = sumS / m;
+
+            // variance of the mean over the tuples, with the finite
+            // population correction, plus the error of the references, which
+            // the same tuples share
+            double var = m > 1 ? (sumS2 - sumS * sil[c]) / (m - 1) : 0;
+            var = Math.max(0, var) * (1 - m / (double) pop) / m;
+            final double ref = sumRef / m;
+            err[c] = Z95 * Math.sqrt(var + ref * ref);
+
+            final double w = pop / (double) notnoisecnt;
+            acmp += w * cmp[c];
+            asep += w * sep[c];
+            asil += w * sil[c];
+            avar += w * w * var;
+            aref += w * ref;
+        }
+        this.compactness = acmp;
+        this.separation = asep;
+        this.silhouette = asil;
+        this.silhouetteError = Z95 * Math.sqrt(avar + aref * aref);
+    }
+
+    /** Calculate the a/b/s values of each tuple from all pairs of tuples */
+    private static void pairwisePass(DataSet data, int tupc, int[] ids,
+            int[] pop, int clcnt, ForkJoinPool pool, double[] ta, double[] tb,
+            double[] ts) {
+        Parallel.forRange(pool, 0, tupc, GRAIN, (lo, hi) -> {
+            double[] acc = new double[clcnt + 1];
+            for (int t = lo; t < hi; t++) {
+                final int tclus = ids[t];
+                if (tclus == 0) continue;
+                Arrays.fill(acc, 0);
+
+                for (int i = 0; i < tupc; i++) {
+                    int iclus = ids[i];
+                    if (iclus == 0) continue;
+                    double d = data.dist(t, i);
+                    acc[iclus] += d;
+                }
+
+                double a = pop[tclus] > 1 ? acc[tclus] / (pop[tclus] - 1) : 0;
+                double b = Double.POSITIVE_INFINITY;
+                for (int c = 1; c <= clcnt; c++) {
+                    if (tclus == c || pop[c] == 0) continue;
+                    double bc = acc[c] / pop[c];
+                    if (bc < b) b = bc;
+                }
+                ta[t] = a;
+                tb[t] = b;
+                ts[t] = Double.isFinite(b) ? (b - a) / Math.max(a, b) : 1.0;
+            }
+            return null;
+        });
+    }
+
+    /** Calculate the a/b/s values of each tuple from the cluster centroids */
+    private static void centroidPass(DataSet data, int tupc, int[] ids,
+            int[] pop, int clcnt, ForkJoinPool pool, double[] ta, double[] tb,
+            double[] ts) {
+        final int attrc = data.attrCnt;
+        final double[] centroids = new double[(clcnt + 1) * attrc];
+        for (int t = 0; t < tupc; t++) {
+            final int off = ids[t] * attrc;
+            for (int k = 0; k < attrc; k++) {
+                centroids[off + k] += data.getAttr(t, k);
+            }
+        }
+        for (int c = 1; c <= clcnt; c++) {
+            for (int k = 0; k < attrc; k++) {
+                if (pop[c] > 0) centroids[c * attrc + k] /= pop[c];
+            }
+        }
+
+        Parallel.forRange(pool, 0, tupc, GRAIN_SIMPLIFIED, (lo, hi) -> {
+            for (int t = lo; t < hi; t++) {
+                final int tclus = ids[t];
+                if (tclus == 0) continue;
+                double a = data.dist(t, centroids, tclus * attrc);
+                double b = Double.POSITIVE_INFINITY;
+                for (int c = 1; c <= clcnt; c++) {
+                    if (tclus == c || pop[c] == 0) continue;
+                    double bc = data.dist(t, centroids, c * attrc);
+                    if (bc < b) b = bc;
+                }
+                final double m = Math.max(a, b);
+                ta[t] = a;
+                tb[t] = b;
+                ts[t] = !Double.isFinite(b) ? 1.0 : m > 0 ? (b - a) / m : 0;
+            }
+            return null;
+        });
     }
 
     /** Return the total number of clusters. */
@@ -100,4 +385,12 @@ public class Silhouette {
     public double silhouette(int clusterID) {
         return clSil[clusterID];
     }
+
+    /**
+     * Return the half-width of the 95% confidence interval of the silhouette
+     * coef. of a cluster, or zero if it was calculated exactly.
+     */
+    public double silhouetteError(int clusterID) {
+        return clSilErr[clusterID];
+    }
 }
@@ -0,0 +1,260 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A streaming reader for the text files written by
+ * {@link DataSet#print(PrintStream)} and {@link Clustering#print(PrintStream)}:
+ * a {@code #} comment line, a header row, and one tab-separated row per tuple.
+ * <p>
+ * The file is read through a fixed buffer, and numbers are parsed straight
+ * from its bytes into a preallocated array, without creating a
+ * {@code String} per field. Numbers with at most 15 significant digits and no
+ * exponent, like those of {@code %7.3f}, take an exact fast path. Anything
+ * else falls back to {@link Double#parseDouble}, so values always round
+ * exactly as they would with the standard parser.
+ */
+public final class TextReader implements AutoCloseable {
+
+    /** Size of the read buffer */
+    private static final int  BUFFER_SIZE = 1 << 20;
+
+    /** Longest token that is guaranteed to be parsed from a single buffer */
+    private static final int  MAX_TOKEN   = 256;
+
+    private static final long MAX_EXACT   = 1L << 53;
+
+    /** Exactly representable powers of ten */
+    private static final double[] POW10   = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final FileChannel ch;
+
+    private final byte[]      buf;
+
+    private final ByteBuffer  _wrap;
+
+    private int               pos, limit;
+
+    private boolean           eof;
+
+    private TextReader(Path file) throws IOException {
+        this.ch = FileChannel.open(file, StandardOpenOption.READ);
+        this.buf = new byte[BUFFER_SIZE];
+        this._wrap = ByteBuffer.wrap(buf);
+    }
+
+    /** Read a file written by {@link DataSet#print(PrintStream)}. */
+    public static DataSet readDataSet(Path file) throws IOException {
+        try (TextReader in = new TextReader(file)) {
+            in.line(); // description
+            String header = in.line();
+            int attrc = 0;
+            for (int i = 0; i < header.length(); i++) {
+                if (header.charAt(i) == '\t') attrc++;
+            }
+            if (attrc == 0) throw new IOException(file + ": no attributes");
+
+            // each value takes at least 8 bytes when written with %7.3f
+            long est = in.ch.size() / (8L * attrc + 2) + 1;
+            double[] flat = new double[(int) Math.min(est * attrc,
+                    Integer.MAX_VALUE - 8)];
+            int tupc = 0;
+            for (; in.skipBlank(); tupc++) {
+                in.parseLong(); // tuple ID
+                int off = tupc * attrc;
+                if (off + attrc > flat.length) {
+                    flat = Arrays.copyOf(flat, (int) Math.min(2L * flat.length
+                            + attrc, Integer.MAX_VALUE - 8));
+                }
+                for (int k = 0; k < attrc; k++) {
+                    flat[off + k] = in.parseDouble();
+                }
+                in.endRow();
+            }
+            if (flat.length > tupc * attrc + (tupc * attrc >> 3)) {
+                // badly overestimated, don't keep the excess around
+                flat = Arrays.copyOf(flat, tupc * attrc);
+            }
+            return new DataSet(tupc, attrc, flat);
+        }
+    }
+
+    /** Read a file written by {@link Clustering#print(PrintStream)}. */
+    public static LoadedClustering readClustering(Path file)
+            throws IOException {
+        try (TextReader in = new TextReader(file)) {
+            String desc = in.line();
+            if (desc.startsWith("# ")) desc = desc.substring(2);
+            String header = in.line();
+            int open = header.indexOf('('), close = header.indexOf(')');
+            if (open < 0 || close < open) {
+                throw new IOException(file + ": missing cluster count");
+            }
+            int clc = Integer.parseInt(header.substring(open + 1, close));
+
+            // each row takes at least 4 bytes
+            long est = in.ch.size() / 4 + 1;
+            int[] mapping = new int[(int) Math.min(est, Integer.MAX_VALUE - 8)];
+            int tupc = 0;
+            for (; in.skipBlank(); tupc++) {
+                in.parseLong(); // tuple ID
+                if (tupc == mapping.length) {
+                    mapping = Arrays.copyOf(mapping, 2 * tupc);
+                }
+                mapping[tupc] = (int) in.parseLong();
+                in.endRow();
+            }
+            if (mapping.length > tupc + (tupc >> 3)) {
+                mapping = Arrays.copyOf(mapping, tupc);
+            }
+            return new LoadedClustering(mapping, tupc, clc, desc);
+        }
+    }
+
+    @Override public void close() throws IOException {
+        ch.close();
+    }
+
+    /** Make sure at least {@code n} bytes are buffered, unless at EOF */
+    private void require(int n) throws IOException {
+        if (limit - pos >= n || eof) return;
+        System.arraycopy(buf, pos, buf, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < n && !eof) {
+            _wrap.limit(buf.length).position(limit);
+            int r = ch.read(_wrap);
+            if (r < 0) eof = true;
+            else limit += r;
+        }
+    }
+
+    /** Read a whole line as a string, for the few non-numeric lines */
+    private String line() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            require(1);
+            if (pos == limit) break;
+            byte b = buf[pos++];
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Skip blank lines, and return whether another row follows */
+    private boolean skipBlank() throws IOException {
+        while (true) {
+            require(1);
+            if (pos == limit) return false;
+            byte b = buf[pos];
+            if (b != '\n' && b != '\r' && b != ' ' && b != '\t') return true;
+            pos++;
+        }
+    }
+
+    /** Skip to the start of the next row, ignoring trailing whitespace */
+    private void endRow() throws IOException {
+        while (true) {
+            require(1);
+            if (pos == limit) return;
+            byte b = buf[pos++];
+            if (b == '\n') return;
+            if (b != '\r' && b != ' ' && b != '\t') {
+                throw new IOException("unexpected data at end of row");
+            }
+        }
+    }
+
+    /** Skip the spaces and tabs in front of a field */
+    private void skipSpace() throws IOException {
+        while (true) {
+            require(MAX_TOKEN);
+            if (pos == limit) throw new IOException("unexpected end of file");
+            byte b = buf[pos];
+            if (b != ' ' && b != '\t') return;
+            pos++;
+        }
+    }
+
+    private long parseLong() throws IOException {
+        skipSpace();
+        int p = pos;
+        boolean neg = buf[p] == '-';
+        if (neg || buf[p] == '+') p++;
+        final int start = p;
+        long v = 0;
+        while (p < limit && buf[p] >= '0' && buf[p] <= '9' && p - start < 18) {
+            v = 10 * v + (buf[p++] - '0');
+        }
+        if (p == start || (p < limit && isTokenByte(buf[p]))) {
+            throw new IOException("malformed integer: " + token());
+        }
+        pos = p;
+        return neg ? -v : v;
+    }
+
+    private double parseDouble() throws IOException {
+        skipSpace();
+        int p = pos;
+        boolean neg = buf[p] == '-';
+        if (neg || buf[p] == '+') p++;
+        final int start = p;
+        long mant = 0;
+        int digits = 0, frac = -1;
+        for (; p < limit; p++) {
+            final byte b = buf[p];
+            if (b >= '0' && b <= '9') {
+                mant = 10 * mant + (b - '0');
+                if (mant != 0 || frac >= 0) digits++;
+                if (frac >= 0) frac++;
+            } else if (b == '.' && frac < 0) {
+                frac = 0;
+            } else {
+                break;
+            }
+        }
+        if (p < limit && isTokenByte(buf[p]) || digits > 15
+                || frac >= POW10.length || p - start == (frac < 0 ? 0 : 1)
+                || mant >= MAX_EXACT) {
+            // exponents, NaN, Infinity, long or malformed numbers
+            String tok = token();
+            try {
+                return Double.parseDouble(tok);
+            } catch (NumberFormatException e) {
+                throw new IOException("malformed number: " + tok);
+            }
+        }
+        pos = p;
+        // both operands are exact, so the quotient is correctly rounded
+        double v = frac > 0 ? mant / POW10[frac] : mant;
+        return neg ? -v : v;
+    }
+
+    private static boolean isTokenByte(byte b) {
+        return b != ' ' && b != '\t' && b != '\r' && b != '\n';
+    }
+
+    /** Consume the current token as a string, for the slow paths */
+    private String token() {
+        int p = pos;
+        while (p < limit && isTokenByte(buf[p])) {
+            p++;
+        }
+        String tok = new String(buf, pos, p - pos, StandardCharsets.US_ASCII);
+        pos = p;
+        return tok;
+    }
+}
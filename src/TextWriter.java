@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * A fast writer for the text files of {@link DataSet#print(PrintStream)} and
+ * {@link Clustering#print(PrintStream)}, with byte-for-byte identical output.
+ * <p>
+ * Numbers are formatted directly into a reused byte buffer, which is written
+ * through a {@link FileChannel}. Values are formatted with {@code %7.3f} by
+ * scaling and rounding; values whose rounding is not clear-cut (close to a
+ * half-way point, very large, NaN or infinite), and every value when the
+ * default locale does not use plain ASCII digits, fall back to
+ * {@link String#format}.
+ * <p>
+ * Clusterings can also be written as raw binary labels, see
+ * {@link #writeLabels(Clustering, Path)}.
+ */
+public final class TextWriter implements AutoCloseable {
+
+    /** Size of the write buffer */
+    private static final int    BUFFER_SIZE = 1 << 16;
+
+    /** Room kept free in the buffer for one number */
+    private static final int    MAX_NUMBER  = 64;
+
+    /** Largest magnitude formatted without falling back */
+    private static final double MAX_FAST    = 1e9;
+
+    /** Distance from a half-way point below which rounding falls back */
+    private static final double HALF_MARGIN = 1e-3;
+
+    private final FileChannel   ch;
+
+    private final ByteBuffer    buf;
+
+    private final byte[]        newline;
+
+    private final Charset       charset;
+
+    private final boolean       fast;       // locale uses ASCII digits
+
+    private TextWriter(Path file) throws IOException {
+        this.ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+        this.charset = Charset.defaultCharset();
+        this.newline = System.lineSeparator().getBytes(charset);
+        DecimalFormatSymbols sym = DecimalFormatSymbols.getInstance(Locale
+                .getDefault(Locale.Category.FORMAT));
+        this.fast = sym.getZeroDigit() == '0' && sym.getDecimalSeparator() == '.'
+                && sym.getMinusSign() == '-';
+    }
+
+    /** Write a data set, exactly like {@link DataSet#print(PrintStream)}. */
+    public static void write(DataSet data, Path file) throws IOException {
+        try (TextWriter out = new TextWriter(file)) {
+            // description
+            out.string("# ");
+            out.string(data.toString());
+            out.newline();
+
+            // header row
+            out.string("TupleID");
+            for (int k = 0; k < data.attrCnt; k++) {
+                out.ascii('\t');
+                out.ascii('d');
+                out.integer(k + 1);
+            }
+            out.newline();
+
+            // tuples
+            final double[] flat = data.flatData;
+            final int attrc = data.attrCnt;
+            for (int t = 0; t < data.tupleCnt; t++) {
+                out.integer(t + 1);
+                for (int k = 0; k < attrc; k++) {
+                    out.ascii('\t');
+                    out.fixed(flat[t * attrc + k]);
+                }
+                out.newline();
+            }
+        }
+    }
+
+    /**
+     * Write a clustering, exactly like {@link Clustering#print(PrintStream)}.
+     */
+    public static void write(Clustering cl, Path file) throws IOException {
+        try (TextWriter out = new TextWriter(file)) {
+            // description
+            out.string("# ");
+            out.string(cl.toString());
+            out.newline();
+
+            // header row
+            out.string("TupleID\tClusterID(");
+            out.integer(cl.clusterCount());
+            out.ascii(')');
+            out.newline();
+
+            // tuples
+            final int tupc = cl.tupleCount();
+            int[] labels = new int[tupc];
+            cl.labels(labels);
+            for (int t = 0; t < tupc; t++) {
+                out.integer(t + 1);
+                out.ascii('\t');
+                out.integer(labels[t]);
+                out.newline();
+            }
+        }
+    }
+
+    /**
+     * Write the cluster ID of each tuple as a raw array of little-endian 32 bit
+     * ints, with no header. The tuple count is the file size / 4.
+     */
+    public static void writeLabels(Clustering cl, Path file)
+            throws IOException {
+        try (TextWriter out = new TextWriter(file)) {
+            out.buf.order(ByteOrder.LITTLE_ENDIAN);
+            final int tupc = cl.tupleCount();
+            int[] labels = new int[tupc];
+            cl.labels(labels);
+            for (int t = 0; t < tupc; t++) {
+                if (out.buf.remaining() < Integer.BYTES) out.flush();
+                out.buf.putInt(labels[t]);
+            }
+        }
+    }
+
+    @Override public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            ch.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    private void ascii(char c) throws IOException {
+        if (!buf.hasRemaining()) flush();
+        buf.put((byte) c);
+    }
+
+    private void newline() throws IOException {
+        if (buf.remaining() < newline.length) flush();
+        buf.put(newline);
+    }
+
+    private void string(String s) throws IOException {
+        byte[] bytes = s.getBytes(charset);
+        for (int i = 0; i < bytes.length;) {
+            if (!buf.hasRemaining()) flush();
+            int n = Math.min(buf.remaining(), bytes.length - i);
+            buf.put(bytes, i, n);
+            i += n;
+        }
+    }
+
+    private void integer(long v) throws IOException {
+        if (!fast) {
+            string(Long.toString(v));
+            return;
+        }
+        if (buf.remaining() < MAX_NUMBER) flush();
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) {
+                string(Long.toString(v));
+                return;
+            }
+            buf.put((byte) '-');
+            v = -v;
+        }
+        digits(v, 1);
+    }
+
+    /** Write the digits of a non-negative number, padded with zeros */
+    private void digits(long v, int minDigits) {
+        final byte[] arr = buf.array();
+        int n = 1;
+        for (long p = v; p >= 10; p /= 10) {
+            n++;
+        }
+        n = Math.max(n, minDigits);
+        final int end = buf.position() + n;
+        for (int i = end - 1; i >= end - n; i--) {
+            arr[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        buf.position(end);
+    }
+
+    /** Write a value like {@code String.format("%7.3f", v)} */
+    private void fixed(double v) throws IOException {
+        final double x = Math.abs(v) * 1000;
+        final double frac = x - Math.floor(x);
+        if (!fast || !(Math.abs(v) < MAX_FAST)
+                || Math.abs(frac - 0.5) < HALF_MARGIN) {
+            string(String.format("%7.3f", v));
+            return;
+        }
+        if (buf.remaining() < MAX_NUMBER) flush();
+        final long scaled = Math.round(x);
+        final long ip = scaled / 1000;
+        final boolean neg = Double.doubleToRawLongBits(v) < 0;
+        int len = 4; // point and three decimals
+        for (long p = ip; p >= 10; p /= 10) {
+            len++;
+        }
+        len += neg ? 2 : 1;
+        for (; len < 7; len++) {
+            buf.put((byte) ' ');
+        }
+        if (neg) buf.put((byte) '-');
+        digits(ip, 1);
+        buf.put((byte) '.');
+        digits(scaled % 1000, 3);
+    }
+}
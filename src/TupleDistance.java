@@ -0,0 +1,18 @@
+/**
+ * A set of tuples that can be compared to points stored in flat arrays, such
+ * as cluster centers. Implemented by both {@link DataSet} and
+ * {@link OffHeapDataSet}, so code like {@link KMeans#nearestCenter} works on
+ * either.
+ */
+public interface TupleDistance {
+
+    /**
+     * Calculate the (euclidean) distance^2 between a tuple of the set and a
+     * tuple stored in an external array.
+     *
+     * @param tupA The index of the first tuple, in the set
+     * @param dataB The array containing the second tuple
+     * @param offB The starting offset of the second tuple in its array
+     */
+    double distSq(long tupA, double[] dataB, int offB);
+}
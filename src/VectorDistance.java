@@ -0,0 +1,95 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Explicitly vectorized distance calculations, using the incubating Vector
+ * API. Only used by {@link DataSet} and {@link FloatDataSet} when the
+ * {@code jdk.incubator.vector} module is available, see
+ * {@link DataSet#VECTORIZED}.
+ */
+final class VectorDistance {
+
+    private static final VectorSpecies<Double> SPECIES       = DoubleVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Float>  FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Smallest attribute count that fills at least one vector. Below this, the
+     * scalar loop is faster.
+     */
+    static final int                           MIN_ATTR       = SPECIES.length();
+
+    /** @see #MIN_ATTR */
+    static final int                           MIN_ATTR_FLOAT = FLOAT_SPECIES.length();
+
+    private VectorDistance() {}
+
+    /** @see DataSet#distSq(double[], int, double[], int, int) */
+    static double distSq(double[] dataA, int idxA, double[] dataB, int idxB,
+            int attrc) {
+        final int len = SPECIES.length(), bound = SPECIES.loopBound(attrc);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int k = 0;
+        for (; k < bound; k += len) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, dataA, idxA + k);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, dataB, idxB + k);
+            DoubleVector d = a.sub(b);
+            acc = acc.add(d.mul(d));
+        }
+        double distSq = acc.reduceLanes(VectorOperators.ADD);
+        for (; k < attrc; k++) {
+            double d = dataA[idxA + k] - dataB[idxB + k];
+            distSq += d * d;
+        }
+        return distSq;
+    }
+
+    /** @see FloatDataSet#distSq(float[], int, float[], int, int) */
+    static float distSq(float[] dataA, int idxA, float[] dataB, int idxB,
+            int attrc) {
+        final int len = FLOAT_SPECIES.length();
+        final int bound = FLOAT_SPECIES.loopBound(attrc);
+        FloatVector acc = FloatVector.zero(FLOAT_SPECIES);
+        int k = 0;
+        for (; k < bound; k += len) {
+            FloatVector a = FloatVector.fromArray(FLOAT_SPECIES, dataA, idxA + k);
+            FloatVector b = FloatVector.fromArray(FLOAT_SPECIES, dataB, idxB + k);
+            FloatVector d = a.sub(b);
+            acc = acc.add(d.mul(d));
+        }
+        float distSq = acc.reduceLanes(VectorOperators.ADD);
+        for (; k < attrc; k++) {
+            float d = dataA[idxA + k] - dataB[idxB + k];
+            distSq += d * d;
+        }
+        return distSq;
+    }
+
+    /** @see ColumnarDataSet#distSq(int, int, double[], int, double[]) */
+    static void distSqColumns(double[] cols, int tupc, int attrc, int lo,
+            int hi, double[] pt, int off, double[] out) {
+        final int len = SPECIES.length(), n = hi - lo;
+        final int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += len) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            for (int k = 0; k < attrc; k++) {
+                DoubleVector x = DoubleVector.fromArray(SPECIES, cols, k * tupc
+                        + lo + i);
+                DoubleVector d = x.sub(pt[off + k]);
+                acc = acc.add(d.mul(d));
+            }
+            acc.intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            double distSq = 0;
+            for (int k = 0; k < attrc; k++) {
+                double d = cols[k * tupc + lo + i] - pt[off + k];
+                distSq += d * d;
+            }
+            out[i] = distSq;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * K-Means accelerated with Yinyang bounds (Ding et al., 2015), for large
+ * cluster counts.
+ * <p>
+ * The centers are partitioned into about {@code k / 10} groups by clustering
+ * the initial centers. Each tuple keeps an upper bound on the distance to its
+ * assigned center and one lower bound per group, on the distance to every
+ * other center in that group. A tuple is only compared to the centers of
+ * groups whose lower bound falls below its upper bound (the group filter),
+ * and within such a group, centers that moved little since the bound was
+ * computed are skipped as well (the local filter). This needs O(n*k/10)
+ * memory, between {@link HamerlyKMeans} and {@link ElkanKMeans}, and prunes
+ * well even for hundreds of clusters.
+ * <p>
+ * Candidate centers are compared by exact distance^2 and ties go to the lowest
+ * center index, exactly as in {@link KMeans}, so both produce the same
+ * assignments from the same initial centers (up to near-ties on wide data
+ * sets, where {@link KMeans} uses {@link BlockedDistance}).
+ */
+public class YinyangKMeans extends Clustering {
+
+    /** Target number of centers per group */
+    private static final int GROUP_SIZE = 10;
+
+    private final int[]    mapping;
+
+    private final double[] upper;       // per tuple: bound on dist to center
+
+    private final double[] lower;       // per tuple and group: bound on dist
+
+    private final int      groupCnt;
+
+    private final int[]    groupOf;     // group of each center
+
+    private final int[]    groupStart;  // start of each group in members
+
+    private final int[]    members;     // center indices, grouped
+
+    private final double[] shift;       // distance each center last moved
+
+    private final double[] groupShift;  // largest shift in each group
+
+    private final double[] _lowerOld;   // scratch: bounds before this tuple
+
+    private final double[] _dists;      // scratch: distance^2 to each center
+
+    private final double[] oldCenters;
+
+    private final double[] newCenters;
+
+    private final int[]    newCounts;
+
+    private final int      clusterCnt;
+
+    private final String   desc;
+
+    public YinyangKMeans(DataSet data, int clusterCnt, double[] centers) {
+        super(data);
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = this.clusterCnt = clusterCnt;
+        assert (centers.length >= clc * attrc);
+
+        // group the centers by clustering them
+        final int grpc = this.groupCnt = Math.max(1, clc / GROUP_SIZE);
+        this.desc = String.format("%s(clusterCnt=%d, groups=%d)", getClass()
+                .getSimpleName(), clc, grpc);
+        DataSet cdata = new DataSet(clc, attrc, Arrays.copyOf(centers, clc
+                * attrc));
+        KMeans grouping = new KMeans(cdata, grpc, Arrays.copyOf(centers, grpc
+                * attrc));
+        this.groupOf = new int[clc];
+        this.groupStart = new int[grpc + 1];
+        this.members = new int[clc];
+        for (int c = 0; c < clc; c++) {
+            groupOf[c] = grouping.clusterID(c) - 1;
+            groupStart[groupOf[c] + 1]++;
+        }
+        for (int g = 0; g < grpc; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        int[] fill = Arrays.copyOf(groupStart, grpc);
+        for (int c = 0; c < clc; c++) {
+            members[fill[groupOf[c]]++] = c;
+        }
+
+        final int[] mapping = this.mapping = new int[tupc];
+        final double[] upper = this.upper = new double[tupc];
+        final double[] lower = this.lower = new double[tupc * grpc];
+        this.shift = new double[clc];
+        final double[] groupShift = this.groupShift = new double[grpc];
+        final double[] lowerOld = this._lowerOld = new double[grpc];
+        final double[] dists = this._dists = new double[clc];
+        this.oldCenters = new double[clc * attrc];
+        this.newCenters = new double[clc * attrc];
+        this.newCounts = new int[clc];
+
+        // first pass: compare every tuple to every center
+        boolean changed = false;
+        for (int t = 0; t < tupc; t++) {
+            final int loff = t * grpc;
+            double min_d2 = Double.POSITIVE_INFINITY;
+            int min_c = 0;
+            for (int c = 0; c < clc; c++) {
+                double d2 = dists[c] = data.distSq(t, centers, attrc * c);
+                if (d2 >= min_d2) continue;
+                min_d2 = d2;
+                min_c = c;
+            }
+            upper[t] = Math.sqrt(min_d2);
+            Arrays.fill(lower, loff, loff + grpc, Double.POSITIVE_INFINITY);
+            for (int c = 0; c < clc; c++) {
+                if (c == min_c) continue;
+                final int g = loff + groupOf[c];
+                lower[g] = Math.min(lower[g], Math.sqrt(dists[c]));
+            }
+            if (mapping[t] != min_c) {
+                changed = true;
+                mapping[t] = min_c;
+            }
+            accumulate(data, t, min_c);
+        }
+        update(data, centers);
+
+        while (changed) {
+            changed = false;
+            for (int t = 0; t < tupc; t++) {
+                final int loff = t * grpc;
+                final int a0 = mapping[t];
+
+                // global filter: no group can hold a closer center
+                double globalLower = Double.POSITIVE_INFINITY;
+                for (int g = 0; g < grpc; g++) {
+                    globalLower = Math.min(globalLower, lower[loff + g]);
+                }
+                if (upper[t] < globalLower) {
+                    accumulate(data, t, a0);
+                    continue;
+                }
+
+                // tighten the upper bound, and re-check
+                final double a0_d2 = data.distSq(t, centers, attrc * a0);
+                final double a0_d = Math.sqrt(a0_d2);
+                double u = upper[t] = a0_d;
+                if (u < globalLower) {
+                    accumulate(data, t, a0);
+                    continue;
+                }
+
+                // group filter, then local filter within each group
+                System.arraycopy(lower, loff, lowerOld, 0, grpc);
+                int a = a0;
+                double a_d2 = a0_d2;
+                for (int g = 0; g < grpc; g++) {
+                    if (u < lower[loff + g]) continue;
+                    final double prev = lowerOld[g] + groupShift[g];
+                    double groupLower = Double.POSITIVE_INFINITY;
+                    for (int i = groupStart[g]; i < groupStart[g + 1]; i++) {
+                        final int c = members[i];
+                        if (c == a) continue;
+                        if (c == a0) {
+                            // distance already known exactly
+                            groupLower = Math.min(groupLower, a0_d);
+                            continue;
+                        }
+                        final double bound = prev - shift[c];
+                        if (u < bound) {
+                            groupLower = Math.min(groupLower, bound);
+                            continue;
+                        }
+                        double d2 = data.distSq(t, centers, attrc * c);
+                        double d = Math.sqrt(d2);
+                        if (d2 < a_d2 || (d2 == a_d2 && c < a)) {
+                            // the old center becomes a lower bound candidate
+                            final int ga = groupOf[a];
+                            if (ga == g) {
+                                groupLower = Math.min(groupLower, u);
+                            } else {
+                                lower[loff + ga] = Math.min(lower[loff + ga], u);
+                            }
+                            a = c;
+                            a_d2 = d2;
+                            u = d;
+                        } else {
+                            groupLower = Math.min(groupLower, d);
+                        }
+                    }
+                    lower[loff + g] = groupLower;
+                }
+
+                upper[t] = u;
+                if (a != a0) {
+                    changed = true;
+                    mapping[t] = a;
+                }
+                accumulate(data, t, a);
+            }
+            update(data, centers);
+        }
+    }
+
+    public YinyangKMeans(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, KMeans.initCenters(data, clusterCnt, rand));
+    }
+
+    /** Add a tuple to the new center of its cluster */
+    private void accumulate(DataSet data, int t, int c) {
+        final int attrc = data.attrCnt, off = c * attrc;
+        for (int k = 0; k < attrc; k++) {
+            newCenters[off + k] += data.getAttr(t, k);
+        }
+        newCounts[c]++;
+    }
+
+    /** Move the centers, and loosen the bounds by the distance moved */
+    private void update(DataSet data, double[] centers) {
+        final int attrc = data.attrCnt, tupc = data.tupleCnt;
+        final int clc = clusterCnt, grpc = groupCnt;
+        System.arraycopy(centers, 0, oldCenters, 0, clc * attrc);
+        KMeans.moveCenters(centers, newCenters, newCounts, clc, attrc);
+        Arrays.fill(groupShift, 0);
+        for (int c = 0; c < clc; c++) {
+            double s = shift[c] = DataSet.dist(oldCenters, c * attrc,
+                    centers, c * attrc, attrc);
+            if (s > groupShift[groupOf[c]]) groupShift[groupOf[c]] = s;
+        }
+        for (int t = 0; t < tupc; t++) {
+            final int loff = t * grpc;
+            upper[t] += shift[mapping[t]];
+            for (int g = 0; g < grpc; g++) {
+                lower[loff + g] -= groupShift[g];
+            }
+        }
+    }
+
+    @Override public int tupleCount() {
+        return mapping.length;
+    }
+
+    @Override public int clusterCount() {
+        return clusterCnt;
+    }
+
+    @Override public int clusterID(int tuple) {
+        return mapping[tuple] + 1;
+    }
+
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
+    @Override public String toString() {
+        return desc;
+    }
+}
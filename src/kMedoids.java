@@ -1,6 +1,30 @@
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * k-Medoids clustering with the swap phase of PAM (Kaufman and Rousseeuw),
+ * using the FastPAM1 swap evaluation (Schubert and Rousseeuw, 2019).
+ * <p>
+ * Each tuple caches its distance to its closest and second-closest medoid, so
+ * the change in total error for swapping a candidate with each of the medoids
+ * takes a single pass over the tuples: tuples that move to the candidate gain
+ * the same for every swap, which is summed once, and the loss of tuples whose
+ * closest medoid is removed is charged to that medoid only. This takes
+ * O(n^2) per iteration instead of O(k*n^2), and finds the same swaps as plain
+ * PAM (up to rounding of near-ties).
+ * <p>
+ * With eager swapping (as in FasterPAM, Schubert and Rousseeuw, 2021), the
+ * best swap for each candidate is applied as soon as it reduces the total
+ * error, instead of only the best swap over all candidates per pass, so many
+ * swaps happen in each pass. The search stops after a full pass over the
+ * candidates without a swap.
+ * <p>
+ * The best-swap search can evaluate candidates in parallel. Each worker
+ * takes a fixed share of the candidates and keeps its best swap, and these
+ * are combined by lowest change in error, then lowest candidate index, so the
+ * swaps are exactly those of the sequential search for any number of threads.
+ */
 public class kMedoids extends Clustering {
 
     private final int        clusterCnt;
@@ -11,19 +35,61 @@ public class kMedoids extends Clustering {
 
     private final double[][] _dists;
 
+    private final double[][] _workerErrs; // per worker: scratch errors
+
+    private final double[]   _bestErr;  // per worker: best change in error
+
+    private final int[]      _bestQ;    // per worker: candidate of best swap
+
+    private final int[]      _bestC;    // per worker: medoid of best swap
+
+    private final int[]      _nearest;  // per tuple: closest medoid
+
+    private final int[]      _second;   // per tuple: second-closest medoid
+
+    private final double[]   _nearD;    // per tuple: distance to closest
+
+    private final double[]   _secondD;  // per tuple: distance to second
+
     private final int[]      mapping;
 
     private final String     desc;
 
     public kMedoids(DataSet data, int clusterCnt, int[] centers) {
+        this(data, clusterCnt, centers, false, null);
+    }
+
+    public kMedoids(DataSet data, int clusterCnt, int[] centers,
+            boolean eager) {
+        this(data, clusterCnt, centers, eager, null);
+    }
+
+    /**
+     * @param eager Apply the best swap for each candidate as soon as it
+     *            reduces the total error, instead of only the best swap over
+     *            all candidates in each iteration
+     * @param pool The pool to evaluate candidates in, or {@code null} to run
+     *            sequentially. Only used by the best-swap search, since eager
+     *            swaps depend on each other.
+     */
+    public kMedoids(DataSet data, int clusterCnt, int[] centers,
+            boolean eager, ForkJoinPool pool) {
         super(data);
         final int clusc = this.clusterCnt = clusterCnt, tupc = data.tupleCnt;
         assert (centers.length >= clusc);
-        this.desc = String.format("%s(clusterCnt=%d)", getClass()
-                .getSimpleName(), clusc);
+        this.desc = pool == null || eager ? String.format(
+                "%s(clusterCnt=%d, eager=%b)", getClass().getSimpleName(),
+                clusc, eager) : String.format(
+                "%s(clusterCnt=%d, eager=%b, threads=%d)", getClass()
+                        .getSimpleName(), clusc, eager, pool.getParallelism());
 
         final int[] medoids = this._medoids = Arrays.copyOf(centers, clusc);
         this._tmperrs = new double[clusc];
+        final int workers = pool == null || eager ? 0 : pool.getParallelism();
+        this._workerErrs = new double[workers][clusc];
+        this._bestErr = new double[workers];
+        this._bestQ = new int[workers];
+        this._bestC = new int[workers];
 
         // initialize distance matrix
         final double[][] dists = this._dists = new double[clusc + 2][tupc];
@@ -33,109 +99,288 @@ public class kMedoids extends Clustering {
             }
         }
 
-        // For each iteration, we find a cluster c and non-medoid q such that
-        // replacing medoids[c] -> q yields the greatest reduction in total error.
+        // initialize closest and second-closest medoids
+        this._nearest = new int[tupc];
+        this._second = new int[tupc];
+        this._nearD = new double[tupc];
+        this._secondD = new double[tupc];
+        for (int t = 0; t < tupc; t++) {
+            nearest(t);
+        }
+
+        if (eager) {
+            eagerSwaps(data);
+        } else if (pool == null) {
+            bestSwaps(data);
+        } else {
+            bestSwapsParallel(data, pool);
+        }
+
+        // calculate mapping
+        final int[] mapping = this.mapping = new int[tupc];
+        for (int t = 0; t < tupc; t++) {
+            double minD = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < clusc; c++) {
+                double d = dists[c][t];
+                if (d >= minD) continue;
+                minD = d;
+                mapping[t] = c;
+            }
+        }
+    }
+
+    public kMedoids(DataSet data, int clusterCnt, Random rand) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand));
+    }
+
+    public kMedoids(DataSet data, int clusterCnt, Random rand, boolean eager) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand), eager);
+    }
+
+    public kMedoids(DataSet data, int clusterCnt, Random rand,
+            ForkJoinPool pool) {
+        this(data, clusterCnt, initCenters(data, clusterCnt, rand), false,
+                pool);
+    }
+
+    /**
+     * For each iteration, find a cluster c and non-medoid q such that
+     * replacing medoids[c] -> q yields the greatest reduction in total error,
+     * until no swap reduces it.
+     */
+    private void bestSwaps(DataSet data) {
+        final int clusc = clusterCnt, tupc = data.tupleCnt;
+        final double[][] dists = this._dists;
+        final double[] tmperrs = this._tmperrs;
         while (true) {
             int swapq = -1, swapc = -1;
             double swapErr = 0;
-            double[] swapDist = this._dists[clusc];
 
             // loop over each non-medoid tuple and find the one with
             // largest benefit when swapping with one of the medoids
             for (int q = 0; q < tupc; q++) {
-
-                // reject q if it is already a medoid
-                boolean isMedoid = false;
-                for (int c = 0; !isMedoid && c < clusc; c++) {
-                    isMedoid = (medoids[c] == q);
-                }
-                if (isMedoid) continue;
-
-                // loop over each tuple to calculate the benefit
-                // of swapping medoids[c] -> q for each cluster c
-                //  tmperrs[c]  is running sum of change-in-err
-                //  tmpdist[t]  is distance from t to q
-                double[] tmperrs = this._tmperrs;
-                Arrays.fill(tmperrs, 0);
-                double[] tmpdist = this._dists[clusc + 1];
-                for (int t = 0; t < tupc; t++) {
-
-                    // find closest and second-closest cluster medoids
-                    int closest = -1, secondClosest = -1;
-                    double closestD = Double.POSITIVE_INFINITY;
-                    double secondClosestD = closestD;
-                    for (int c = 0; c < clusc; c++) {
-                        double d = dists[c][t];
-                        if (d < closestD) {
-                            secondClosestD = closestD;
-                            secondClosest = closest;
-                            closestD = d;
-                            closest = c;
-                        } else if (d < secondClosestD) {
-                            secondClosestD = d;
-                            secondClosest = c;
-                        }
-                    }
-
-                    // compare to proposed swap point q
-                    double swapD = tmpdist[t] = data.dist(q, t);
-                    if (swapD < closestD) {
-                        // q is closer than current closest medoid
-                        // swapping q<->c will reduce the error equally for all c
-                        for (int c = 0; c < clusc; c++) {
-                            tmperrs[c] += swapD - closestD;
-                        }
-                    } else {
-                        // q is farther than current closest medoid
-                        // error will be changed (increased) only if we 
-                        // swap q <-> closest medoid
-                        secondClosestD = Math.min(swapD, secondClosestD);
-                        tmperrs[closest] += secondClosestD - closestD;
-                    }
-                }
+                if (isMedoid(q)) continue;
+                final double shared = swapErrors(data, q, dists[clusc + 1],
+                        tmperrs);
 
                 // check if there is any current cluster c such that
                 // swapping medoids[c] -> q beats the current best swap
                 for (int c = 0; c < clusc; c++) {
-                    if (tmperrs[c] >= swapErr) continue;
-                    swapErr = tmperrs[c];
+                    final double err = shared + tmperrs[c];
+                    if (err >= swapErr) continue;
+                    swapErr = err;
                     swapq = q;
                     swapc = c;
                 }
                 if (swapq == q) {
-                    double[] t = swapDist;
-                    swapDist = this._dists[clusc] = tmpdist;
-                    tmpdist = this._dists[clusc + 1] = t;
+                    // keep the distances to the best candidate so far
+                    double[] t = dists[clusc];
+                    dists[clusc] = dists[clusc + 1];
+                    dists[clusc + 1] = t;
                 }
             }
 
-            // perform swap
-            if (swapErr >= 0) {
-                // If no swap is found that reduces total error, 
-                // the algorithm has terminated
-                break;
+            // If no swap is found that reduces total error,
+            // the algorithm has terminated
+            if (swapErr >= 0) break;
+            swap(swapc, swapq);
+        }
+    }
+
+    /**
+     * Like {@link #bestSwaps(DataSet)}, but evaluate the candidates in
+     * parallel. Each worker has its own scratch error array and only keeps
+     * its best swap, and the distances to the chosen candidate are recomputed
+     * once before swapping.
+     */
+    private void bestSwapsParallel(DataSet data, ForkJoinPool pool) {
+        final int clusc = clusterCnt, tupc = data.tupleCnt;
+        final int workers = _bestErr.length;
+        while (true) {
+            Parallel.forRange(pool, 0, workers, 1, (w, end) -> {
+                bestSwapShare(data, w, workers);
+                return null;
+            });
+
+            // the first worker wins ties, since its candidates come first
+            int best = 0;
+            for (int w = 1; w < workers; w++) {
+                if (_bestErr[w] < _bestErr[best]) best = w;
+            }
+
+            // If no swap is found that reduces total error,
+            // the algorithm has terminated
+            if (_bestErr[best] >= 0) break;
+            final int swapq = _bestQ[best];
+            final double[] swapDist = _dists[clusc];
+            for (int t = 0; t < tupc; t++) {
+                swapDist[t] = data.dist(swapq, t);
             }
-            medoids[swapc] = swapq;
-            double[] t = dists[swapc];
-            dists[swapc] = swapDist;
-            swapDist = this._dists[clusc] = t;
+            swap(_bestC[best], swapq);
         }
+    }
 
-        // calculate mapping
-        final int[] mapping = this.mapping = new int[tupc];
-        for (int t = 0; t < tupc; t++) {
-            double minD = Double.POSITIVE_INFINITY;
+    /** Find the best swap among the candidates of a worker's share */
+    private void bestSwapShare(DataSet data, int w, int workers) {
+        final int clusc = clusterCnt, tupc = data.tupleCnt;
+        final int lo = (int) ((long) tupc * w / workers);
+        final int hi = (int) ((long) tupc * (w + 1) / workers);
+        final double[] tmperrs = _workerErrs[w];
+        double swapErr = 0;
+        int swapq = -1, swapc = -1;
+        for (int q = lo; q < hi; q++) {
+            if (isMedoid(q)) continue;
+            final double shared = swapErrors(data, q, null, tmperrs);
             for (int c = 0; c < clusc; c++) {
-                double d = dists[c][t];
+                final double err = shared + tmperrs[c];
+                if (err >= swapErr) continue;
+                swapErr = err;
+                swapq = q;
+                swapc = c;
+            }
+        }
+        _bestErr[w] = swapErr;
+        _bestQ[w] = swapq;
+        _bestC[w] = swapc;
+    }
+
+    /**
+     * Visit the non-medoids in a cycle and apply the best swap for each one
+     * that reduces the total error, until a full cycle passes without a swap.
+     */
+    private void eagerSwaps(DataSet data) {
+        final int clusc = clusterCnt, tupc = data.tupleCnt;
+        final double[] tmperrs = this._tmperrs;
+        for (int q = 0, sinceSwap = 0; sinceSwap < tupc; //
+        q = (q + 1) % tupc, sinceSwap++) {
+            if (isMedoid(q)) continue;
+            final double shared = swapErrors(data, q, _dists[clusc], tmperrs);
+            int best = 0;
+            for (int c = 1; c < clusc; c++) {
+                if (tmperrs[c] < tmperrs[best]) best = c;
+            }
+            if (shared + tmperrs[best] >= 0) continue;
+            swap(best, q);
+            sinceSwap = 0;
+        }
+    }
+
+    /**
+     * Calculate the change in total error for swapping each medoid with q, in
+     * one pass over the tuples. The change for medoid c is the returned shared
+     * term plus {@code tmperrs[c]}.
+     *
+     * @param tmpdist Receives the distance from each tuple to q, if not
+     *            {@code null}
+     */
+    private double swapErrors(DataSet data, int q, double[] tmpdist,
+            double[] tmperrs) {
+        final int[] nearest = this._nearest;
+        final double[] nearD = this._nearD, secondD = this._secondD;
+        Arrays.fill(tmperrs, 0);
+        double shared = 0;
+        for (int t = 0; t < nearest.length; t++) {
+            final double swapD = data.dist(q, t);
+            if (tmpdist != null) tmpdist[t] = swapD;
+            if (swapD < nearD[t]) {
+                // q is closer than the current closest medoid, so t moves to
+                // q whichever medoid is removed
+                shared += swapD - nearD[t];
+            } else {
+                // t only moves (to q or its second-closest medoid) if its
+                // closest medoid is removed
+                tmperrs[nearest[t]] += Math.min(swapD, secondD[t]) - nearD[t];
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Replace medoids[c] -> q, where the distances to q are in
+     * {@code _dists[clusterCnt]}.
+     */
+    private void swap(int c, int q) {
+        final double[][] dists = this._dists;
+        _medoids[c] = q;
+        double[] t = dists[c];
+        dists[c] = dists[clusterCnt];
+        dists[clusterCnt] = t;
+
+        // update closest and second-closest medoids
+        final double[] dc = dists[c];
+        for (int i = 0; i < dc.length; i++) {
+            final double d = dc[i];
+            if (_nearest[i] == c || _second[i] == c) {
+                nearest(i);
+            } else if (d < _nearD[i]) {
+                _second[i] = _nearest[i];
+                _secondD[i] = _nearD[i];
+                _nearest[i] = c;
+                _nearD[i] = d;
+            } else if (d < _secondD[i]) {
+                _second[i] = c;
+                _secondD[i] = d;
+            }
+        }
+    }
+
+    /** Find the closest and second-closest medoids of tuple t */
+    private void nearest(int t) {
+        int closest = -1, secondClosest = -1;
+        double closestD = Double.POSITIVE_INFINITY;
+        double secondClosestD = closestD;
+        for (int c = 0; c < clusterCnt; c++) {
+            double d = _dists[c][t];
+            if (d < closestD) {
+                secondClosestD = closestD;
+                secondClosest = closest;
+                closestD = d;
+                closest = c;
+            } else if (d < secondClosestD) {
+                secondClosestD = d;
+                secondClosest = c;
+            }
+        }
+        _nearest[t] = closest;
+        _second[t] = secondClosest;
+        _nearD[t] = closestD;
+        _secondD[t] = secondClosestD;
+    }
+
+    /** Return whether tuple q is a medoid */
+    private boolean isMedoid(int q) {
+        for (int c = 0; c < clusterCnt; c++) {
+            if (_medoids[c] == q) return true;
+        }
+        return false;
+    }
+
+    /** Return the tuple index of the medoid of a cluster */
+    public int medoid(int clusterID) {
+        return _medoids[clusterID - 1];
+    }
+
+    /**
+     * Assign each tuple to its closest medoid, with ties going to the lowest
+     * medoid index, as in the mapping of this class.
+     *
+     * @param medoids The tuple index of each medoid
+     * @param mapping Receives the index of each tuple's closest medoid
+     * @return The total distance of all tuples to their medoids
+     */
+    public static double assign(DataSet data, int[] medoids, int[] mapping) {
+        double cost = 0;
+        for (int t = 0; t < data.tupleCnt; t++) {
+            double minD = Double.POSITIVE_INFINITY;
+            for (int c = 0; c < medoids.length; c++) {
+                double d = data.dist(medoids[c], t);
                 if (d >= minD) continue;
                 minD = d;
                 mapping[t] = c;
             }
+            cost += minD;
         }
-    }
-
-    public kMedoids(DataSet data, int clusterCnt, Random rand) {
-        this(data, clusterCnt, initCenters(data, clusterCnt, rand));
+        return cost;
     }
 
     /** Find random starting points for clusters */
@@ -159,6 +404,12 @@ public class kMedoids extends Clustering {
         return mapping[tuple] + 1;
     }
 
+    @Override public void labels(int[] out) {
+        for (int t = 0; t < mapping.length; t++) {
+            out[t] = mapping[t] + 1;
+        }
+    }
+
     @Override public String toString() {
         return desc;
     }